@@ -0,0 +1,8 @@
+package com.purno.jobman;
+
+public class BenchmarkJob extends AbstractJob<Void> {
+
+    @Override
+    public void run() {
+    }
+}
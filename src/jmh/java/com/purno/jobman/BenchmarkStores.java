@@ -0,0 +1,40 @@
+package com.purno.jobman;
+
+import org.h2.jdbcx.JdbcDataSource;
+
+import java.sql.Connection;
+import java.sql.Statement;
+
+final class BenchmarkStores {
+
+    private BenchmarkStores() {
+    }
+
+    static JobStore create(String storeType, String databaseName) {
+        return switch (storeType) {
+            case "memory" -> new InMemoryJobStore();
+            case "h2" -> new SqlJobStore(dataSource(databaseName));
+            default -> throw new IllegalArgumentException("Unknown store type " + storeType);
+        };
+    }
+
+    static void close(JobStore jobStore, String databaseName) throws Exception {
+        if (jobStore instanceof SqlJobStore sqlJobStore) {
+            sqlJobStore.close();
+
+            // Release the in-memory database so later trials start from an empty heap
+            try (Connection conn = dataSource(databaseName).getConnection();
+                 Statement stmt = conn.createStatement()) {
+                stmt.execute("SHUTDOWN");
+            }
+        }
+    }
+
+    private static JdbcDataSource dataSource(String databaseName) {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + databaseName + ";DB_CLOSE_DELAY=-1");
+        dataSource.setUser("sa");
+        dataSource.setPassword("");
+        return dataSource;
+    }
+}
@@ -0,0 +1,48 @@
+package com.purno.jobman;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class JobCodecBenchmark {
+
+    @Param({"json", "smile"})
+    public String format;
+
+    private JobCodec codec;
+    private BenchmarkJob job;
+    private byte[] encoded;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        codec = new JacksonJobCodec("smile".equals(format));
+
+        job = new BenchmarkJob();
+        job.setId(42);
+        job.setName("Nightly export");
+        job.setDescription("Exports the previous day's orders to the warehouse");
+        job.setState(JobState.RUNNING);
+        job.setMessage("Running");
+        job.setScheduledTime(Instant.now());
+        job.setStartTime(Instant.now());
+        job.setDuration(Duration.ofSeconds(12));
+
+        encoded = codec.encode(job);
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        return codec.encode(job);
+    }
+
+    @Benchmark
+    public Job<?> decode() throws IOException {
+        return codec.decode(BenchmarkJob.class.getName(), encoded);
+    }
+}
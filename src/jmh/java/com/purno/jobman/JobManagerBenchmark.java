@@ -0,0 +1,59 @@
+package com.purno.jobman;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class JobManagerBenchmark {
+    private static final int JOBS_PER_INVOCATION = 1000;
+
+    @Param({"memory", "h2"})
+    public String storeType;
+
+    private JobStore jobStore;
+    private String databaseName;
+    private JobManager jobManager;
+    private final AtomicReference<CountDownLatch> completed = new AtomicReference<>();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        databaseName = "manager_bench_" + System.nanoTime();
+        jobStore = BenchmarkStores.create(storeType, databaseName);
+        jobManager = JobManager.builder()
+                .jobStore(jobStore)
+                .progressConsumer(this::onProgress)
+                .jobLimit(JOBS_PER_INVOCATION)
+                .schedulerDelayInSeconds(60)
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        jobManager.stop();
+        BenchmarkStores.close(jobStore, databaseName);
+    }
+
+    private void onProgress(Job<?> job) {
+        if (job.getState() == JobState.SUCCESSFUL) {
+            completed.get().countDown();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(JOBS_PER_INVOCATION)
+    public void submitToCompletion() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(JOBS_PER_INVOCATION);
+        completed.set(latch);
+
+        for (int i = 0; i < JOBS_PER_INVOCATION; i++) {
+            jobManager.add(new BenchmarkJob());
+        }
+
+        latch.await();
+    }
+}
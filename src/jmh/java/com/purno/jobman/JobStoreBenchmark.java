@@ -0,0 +1,77 @@
+package com.purno.jobman;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class JobStoreBenchmark {
+
+    @Param({"memory", "h2"})
+    public String storeType;
+
+    @Param({"1000", "100000"})
+    public int backlogSize;
+
+    private JobStore jobStore;
+    private String databaseName;
+    private long[] jobIds;
+    private Job<?>[] finishedJobs;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        databaseName = "store_bench_" + System.nanoTime();
+        jobStore = BenchmarkStores.create(storeType, databaseName);
+        jobIds = new long[backlogSize];
+        finishedJobs = new Job<?>[backlogSize / 2];
+
+        // Half of the backlog is history, a tenth is scheduled for later and the rest is runnable
+        for (int i = 0; i < backlogSize; i++) {
+            BenchmarkJob job = new BenchmarkJob();
+            job.setName("job-" + (i % 10));
+            job.setHeavyWeight(i % 4 == 0);
+            if (i % 2 == 0) {
+                job.setState(JobState.SUCCESSFUL);
+                finishedJobs[i / 2] = job;
+            } else if (i % 10 == 1) {
+                job.setScheduledTime(Instant.now().plusSeconds(3600));
+            }
+
+            jobStore.save(job);
+            jobIds[i] = job.getId();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        BenchmarkStores.close(jobStore, databaseName);
+    }
+
+    @Benchmark
+    public Job<?> save() {
+        Job<?> job = finishedJobs[ThreadLocalRandom.current().nextInt(finishedJobs.length)];
+        job.setMessage("Saved at " + System.nanoTime());
+        jobStore.save(job);
+        return job;
+    }
+
+    @Benchmark
+    public Job<?> get() {
+        return jobStore.get(jobIds[ThreadLocalRandom.current().nextInt(jobIds.length)]);
+    }
+
+    @Benchmark
+    public List<Job<?>> getForRunningNow() {
+        return jobStore.getForRunningNow(100, 10);
+    }
+
+    @Benchmark
+    public Instant getNextScheduledTime() {
+        return jobStore.getNextScheduledTime();
+    }
+}
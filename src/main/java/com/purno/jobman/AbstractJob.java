@@ -6,6 +6,8 @@ import lombok.Setter;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.List;
+import java.util.Map;
 
 @Getter
 @Setter
@@ -16,9 +18,18 @@ public abstract class AbstractJob<R> implements Job<R> {
     private String description;
     private JobState state =  JobState.INIT;
     private String message;
+    private Double progress;
+    private Map<String, Long> counters;
+    private String owner;
     private boolean heavyWeight;
+    private Map<String, Integer> resources = Map.of();
+    private int priority;
+    private RetryPolicy retryPolicy;
+    private int attempts;
     private boolean cancelable;
     private Instant scheduledTime;
+    private String scheduleName;
+    private List<Long> dependsOn = List.of();
     private Instant startTime;
     private Instant endTime;
     private Duration duration;
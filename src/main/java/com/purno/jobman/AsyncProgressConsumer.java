@@ -0,0 +1,182 @@
+package com.purno.jobman;
+
+import lombok.Builder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedTransferQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+// Hands progress events to dedicated threads so slow observers cannot stall dispatch or running jobs.
+// Events are coalesced per job id while queued, and each job always goes to the same consumer thread.
+@Slf4j
+public class AsyncProgressConsumer implements Consumer<Job<?>>, AutoCloseable {
+    private static final int DEFAULT_CAPACITY = 10_000;
+    private static final Duration DEFAULT_SAMPLE_INTERVAL = Duration.ofSeconds(1);
+
+    public enum BackpressurePolicy {
+        // When the queue is full intermediate events are dropped, terminal events are always delivered
+        DROP_INTERMEDIATE,
+        // When the queue is full the reporting thread waits for space
+        BLOCK,
+        // Intermediate events are delivered at most once per sample interval per job, and dropped when the queue is full
+        SAMPLE
+    }
+
+    private final Consumer<Job<?>> consumer;
+    private final int capacity;
+    private final BackpressurePolicy backpressurePolicy;
+    private final long sampleIntervalNanos;
+
+    private final Map<Long, Job<?>> pending = new ConcurrentHashMap<>();
+    private final Map<Long, Long> lastSampled = new ConcurrentHashMap<>();
+    private final List<LinkedTransferQueue<Long>> queues = new ArrayList<>();
+    private final List<Thread> threads = new ArrayList<>();
+    private final AtomicInteger queued = new AtomicInteger(0);
+    private final LongAdder dropped = new LongAdder();
+    private volatile boolean closed = false;
+
+    public AsyncProgressConsumer(Consumer<Job<?>> consumer) {
+        this(consumer, 0, 0, null, null);
+    }
+
+    @Builder
+    public AsyncProgressConsumer(Consumer<Job<?>> consumer,
+                                 int capacity,
+                                 int consumerThreads,
+                                 BackpressurePolicy backpressurePolicy,
+                                 Duration sampleInterval) {
+        this.consumer = consumer;
+        this.capacity = capacity > 0 ? capacity : DEFAULT_CAPACITY;
+        this.backpressurePolicy = backpressurePolicy != null ? backpressurePolicy : BackpressurePolicy.DROP_INTERMEDIATE;
+        this.sampleIntervalNanos = (sampleInterval != null ? sampleInterval : DEFAULT_SAMPLE_INTERVAL).toNanos();
+
+        for (int i = 0; i < Math.max(consumerThreads, 1); i++) {
+            LinkedTransferQueue<Long> queue = new LinkedTransferQueue<>();
+            queues.add(queue);
+            threads.add(Thread.ofPlatform()
+                    .name("job-progress-" + i)
+                    .daemon()
+                    .start(() -> deliverAll(queue)));
+        }
+    }
+
+    @Override
+    public void accept(Job<?> job) {
+        if (closed) {
+            deliver(job);
+            return;
+        }
+
+        long jobId = job.getId();
+        boolean terminal = job.getState() != null && job.getState().isDone();
+        while (true) {
+            if (pending.replace(jobId, job) != null) {
+                return;
+            }
+            if (!terminal && backpressurePolicy == BackpressurePolicy.SAMPLE && !sample(jobId)) {
+                dropped.increment();
+                return;
+            }
+            if (!reserve(terminal)) {
+                dropped.increment();
+                return;
+            }
+            if (pending.putIfAbsent(jobId, job) == null) {
+                queues.get((int) Math.floorMod(jobId, (long) queues.size())).add(jobId);
+                if (closed && pending.remove(jobId, job)) {
+                    // The consumer threads may already have exited
+                    queued.decrementAndGet();
+                    deliver(job);
+                }
+                return;
+            }
+
+            // Raced with another reporter for the same job, coalesce into its event instead
+            queued.decrementAndGet();
+        }
+    }
+
+    private boolean sample(long jobId) {
+        long now = System.nanoTime();
+        Long last = lastSampled.get(jobId);
+        if (last != null && now - last < sampleIntervalNanos) {
+            return false;
+        }
+        return last == null ? lastSampled.putIfAbsent(jobId, now) == null : lastSampled.replace(jobId, last, now);
+    }
+
+    private boolean reserve(boolean terminal) {
+        while (true) {
+            int current = queued.get();
+            if (current < capacity) {
+                if (queued.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            } else if (backpressurePolicy == BackpressurePolicy.BLOCK && !closed) {
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+            } else if (terminal) {
+                // A job only finishes once, so letting its last event past the limit keeps the overshoot bounded
+                queued.incrementAndGet();
+                return true;
+            } else {
+                return false;
+            }
+        }
+    }
+
+    private void deliverAll(LinkedTransferQueue<Long> queue) {
+        try {
+            while (!closed || !queue.isEmpty()) {
+                Long jobId = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (jobId == null) {
+                    continue;
+                }
+
+                Job<?> job = pending.remove(jobId);
+                queued.decrementAndGet();
+                if (job != null) {
+                    if (job.getState() != null && job.getState().isDone()) {
+                        lastSampled.remove(jobId);
+                    }
+                    deliver(job);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void deliver(Job<?> job) {
+        try {
+            consumer.accept(job);
+        } catch (Exception e) {
+            log.error("Error reporting progress of job {}", job.getId(), e);
+        }
+    }
+
+    public long getDroppedEvents() {
+        return dropped.sum();
+    }
+
+    public int getQueuedEvents() {
+        return queued.get();
+    }
+
+    // Delivers the events that are already queued, later events are delivered on the reporting thread
+    @Override
+    public void close() throws InterruptedException {
+        closed = true;
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package com.purno.jobman;
+
+import lombok.Builder;
+
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+// Decorates any JobStore with a bounded LRU cache for get(id), so repeated status checks skip the delegate.
+// Entries are invalidated when the job is saved, deleted, claimed or reclaimed through this store, also when the
+// delegate fails, so a job changed in place for a save that did not happen is not served again. Changes made by
+// other nodes are only seen once an entry expires, so set expireAfterWrite when several nodes share the delegate.
+// Cached jobs are shared between callers: save a job after changing it, never change a cached job in place
+public class CachingJobStore implements JobStore, AutoCloseable {
+    private static final int DEFAULT_MAX_SIZE = 10_000;
+
+    private final JobStore delegate;
+    private final int maxSize;
+    private final Set<JobState> cachedStates;
+    private final Duration expireAfterWrite;
+    private final Map<Long, Entry> cache;
+    // Token of the load in flight per job, guarded by cache. Invalidating a job drops its token, so a load that raced
+    // with a write to the same job is not cached while loads of other jobs are
+    private final Map<Long, Object> loads = new HashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private record Entry(Job<?> job, long loadedAt) {
+    }
+
+    public CachingJobStore(JobStore delegate) {
+        this(delegate, 0, null, null);
+    }
+
+    // cachedStates limits caching to jobs in those states (all when null), e.g. only the active ones
+    @Builder
+    public CachingJobStore(JobStore delegate, int maxSize, Set<JobState> cachedStates, Duration expireAfterWrite) {
+        this.delegate = delegate;
+        this.maxSize = maxSize > 0 ? maxSize : DEFAULT_MAX_SIZE;
+        this.cachedStates = cachedStates == null || cachedStates.isEmpty()
+                ? EnumSet.allOf(JobState.class) : EnumSet.copyOf(cachedStates);
+        this.expireAfterWrite = expireAfterWrite != null && expireAfterWrite.isPositive() ? expireAfterWrite : null;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                return size() > CachingJobStore.this.maxSize;
+            }
+        };
+    }
+
+    public JobStore getDelegate() {
+        return delegate;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public double getHitRate() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (cache) {
+            cache.clear();
+            loads.clear();
+        }
+    }
+
+    @Override
+    public void save(Job<?> job) {
+        try {
+            delegate.save(job);
+        } finally {
+            invalidate(job.getId());
+        }
+    }
+
+    @Override
+    public void saveAll(Collection<? extends Job<?>> jobs) {
+        try {
+            delegate.saveAll(jobs);
+        } finally {
+            invalidate(List.copyOf(jobs));
+        }
+    }
+
+    @Override
+    public Job<?> get(long jobId) {
+        Entry entry;
+        synchronized (cache) {
+            entry = cache.get(jobId);
+        }
+        if (entry != null && !isExpired(entry)) {
+            hits.increment();
+            return entry.job();
+        }
+        misses.increment();
+        Object token = new Object();
+        synchronized (cache) {
+            loads.put(jobId, token);
+        }
+
+        Job<?> job;
+        try {
+            job = delegate.get(jobId);
+        } catch (RuntimeException e) {
+            synchronized (cache) {
+                loads.remove(jobId, token);
+            }
+            throw e;
+        }
+
+        synchronized (cache) {
+            boolean current = loads.remove(jobId, token);
+            if (job == null || !cachedStates.contains(job.getState())) {
+                cache.remove(jobId);
+            } else if (current) {
+                cache.put(jobId, new Entry(job, System.nanoTime()));
+            }
+        }
+        return job;
+    }
+
+    @Override
+    public void delete(long jobId) {
+        try {
+            delegate.delete(jobId);
+        } finally {
+            invalidate(jobId);
+        }
+    }
+
+    @Override
+    public List<Job<?>> getAll() {
+        return delegate.getAll();
+    }
+
+    @Override
+    public List<Job<?>> getPage(long afterId, int limit) {
+        return delegate.getPage(afterId, limit);
+    }
+
+    @Override
+    public Stream<Job<?>> stream(int pageSize) {
+        return delegate.stream(pageSize);
+    }
+
+    @Override
+    public <R> R getResult(long jobId) {
+        return delegate.getResult(jobId);
+    }
+
+    @Override
+    public InputStream openResult(long jobId) {
+        return delegate.openResult(jobId);
+    }
+
+    @Override
+    public List<Job<?>> getDependents(long jobId) {
+        return delegate.getDependents(jobId);
+    }
+
+    @Override
+    public boolean hasDependents(long jobId) {
+        return delegate.hasDependents(jobId);
+    }
+
+    @Override
+    public List<Job<?>> getByState(JobState state, int limit) {
+        return delegate.getByState(state, limit);
+    }
+
+    @Override
+    public List<Job<?>> query(JobQuery query) {
+        return delegate.query(query);
+    }
+
+    @Override
+    public long count(JobQuery query) {
+        return delegate.count(query);
+    }
+
+    @Override
+    public List<Job<?>> getForRunningNow(int limit, int heavyWeightLimit) {
+        return delegate.getForRunningNow(limit, heavyWeightLimit);
+    }
+
+    @Override
+    public List<Job<?>> claim(String nodeId, int limit, int heavyWeightLimit, Map<String, Integer> groupWeights, Duration leaseDuration,
+                              Map<String, Integer> availableResources) {
+        return invalidate(delegate.claim(nodeId, limit, heavyWeightLimit, groupWeights, leaseDuration, availableResources));
+    }
+
+    @Override
+    public int renewLeases(String nodeId, Duration leaseDuration) {
+        return delegate.renewLeases(nodeId, leaseDuration);
+    }
+
+    @Override
+    public List<Job<?>> reclaimExpiredLeases(int limit, JobState targetState, String excludedOwner) {
+        return invalidate(delegate.reclaimExpiredLeases(limit, targetState, excludedOwner));
+    }
+
+    @Override
+    public int purge(JobState state, Instant endedBefore, int limit, boolean archive) {
+        int purged = delegate.purge(state, endedBefore, limit, archive);
+        if (purged > 0 && cachedStates.contains(state)) {
+            // The purged ids are not known here
+            invalidateAll();
+        }
+        return purged;
+    }
+
+    @Override
+    public Instant getNextScheduledTime() {
+        return delegate.getNextScheduledTime();
+    }
+
+    @Override
+    public Instant getLastScheduledTime(String scheduleName) {
+        return delegate.getLastScheduledTime(scheduleName);
+    }
+
+    @Override
+    public long count() {
+        return delegate.count();
+    }
+
+    @Override
+    public void flush() {
+        delegate.flush();
+    }
+
+    @Override
+    public void close() throws Exception {
+        invalidateAll();
+        if (delegate instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+
+    private boolean isExpired(Entry entry) {
+        return expireAfterWrite != null && System.nanoTime() - entry.loadedAt() > expireAfterWrite.toNanos();
+    }
+
+    private void invalidate(long jobId) {
+        synchronized (cache) {
+            cache.remove(jobId);
+            loads.remove(jobId);
+        }
+    }
+
+    private List<Job<?>> invalidate(List<Job<?>> jobs) {
+        if (!jobs.isEmpty()) {
+            synchronized (cache) {
+                for (Job<?> job : jobs) {
+                    cache.remove(job.getId());
+                    loads.remove(job.getId());
+                }
+            }
+        }
+        return jobs;
+    }
+}
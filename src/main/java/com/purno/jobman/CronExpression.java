@@ -0,0 +1,141 @@
+package com.purno.jobman;
+
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+// Unix cron expressions: "minute hour day-of-month month day-of-week", optionally preceded by a seconds field.
+// Supports *, lists, ranges, steps, month and day names and the @yearly/@monthly/@weekly/@daily/@hourly macros.
+// As in Vixie cron a day matches when either day field matches if both are restricted.
+public class CronExpression {
+    private static final Map<String, String> MACROS = Map.of(
+            "@yearly", "0 0 1 1 *",
+            "@annually", "0 0 1 1 *",
+            "@monthly", "0 0 1 * *",
+            "@weekly", "0 0 * * 0",
+            "@daily", "0 0 * * *",
+            "@midnight", "0 0 * * *",
+            "@hourly", "0 * * * *");
+    private static final List<String> MONTHS = List.of("JAN", "FEB", "MAR", "APR", "MAY", "JUN", "JUL", "AUG", "SEP", "OCT", "NOV", "DEC");
+    private static final List<String> DAYS = List.of("SUN", "MON", "TUE", "WED", "THU", "FRI", "SAT");
+    private static final int MAX_YEARS_AHEAD = 5;
+
+    private final String expression;
+    private final BitSet seconds;
+    private final BitSet minutes;
+    private final BitSet hours;
+    private final BitSet daysOfMonth;
+    private final BitSet months;
+    private final BitSet daysOfWeek;
+    private final boolean daysOfMonthRestricted;
+    private final boolean daysOfWeekRestricted;
+
+    public CronExpression(String expression) {
+        this.expression = expression;
+
+        String[] fields = MACROS.getOrDefault(expression.trim().toLowerCase(), expression.trim()).split("\\s+");
+        if (fields.length != 5 && fields.length != 6) {
+            throw new IllegalArgumentException("Cron expression '" + expression + "' must have 5 or 6 fields");
+        }
+
+        int offset = fields.length - 5;
+        seconds = offset == 1 ? parse(fields[0], 0, 59, List.of()) : parse("0", 0, 59, List.of());
+        minutes = parse(fields[offset], 0, 59, List.of());
+        hours = parse(fields[offset + 1], 0, 23, List.of());
+        daysOfMonth = parse(fields[offset + 2], 1, 31, List.of());
+        months = parse(fields[offset + 3], 1, 12, MONTHS);
+        daysOfWeek = parse(fields[offset + 4], 0, 7, DAYS);
+        // 7 is an alias for Sunday
+        if (daysOfWeek.get(7)) {
+            daysOfWeek.set(0);
+        }
+        daysOfMonthRestricted = !fields[offset + 2].startsWith("*");
+        daysOfWeekRestricted = !fields[offset + 4].startsWith("*");
+    }
+
+    private BitSet parse(String field, int min, int max, List<String> names) {
+        BitSet values = new BitSet(max + 1);
+        for (String part : field.split(",")) {
+            int step = 1;
+            int slash = part.indexOf('/');
+            if (slash >= 0) {
+                step = Integer.parseInt(part.substring(slash + 1));
+                part = part.substring(0, slash);
+                if (step <= 0) {
+                    throw new IllegalArgumentException("Invalid step in cron expression '" + expression + "'");
+                }
+            }
+
+            int from;
+            int to;
+            if (part.equals("*")) {
+                from = min;
+                to = max;
+            } else {
+                int dash = part.indexOf('-');
+                from = value(dash >= 0 ? part.substring(0, dash) : part, min, names);
+                to = dash >= 0 ? value(part.substring(dash + 1), min, names) : (slash >= 0 ? max : from);
+            }
+            if (from < min || to > max || from > to) {
+                throw new IllegalArgumentException("Value out of range in cron expression '" + expression + "'");
+            }
+
+            for (int i = from; i <= to; i += step) {
+                values.set(i);
+            }
+        }
+        return values;
+    }
+
+    private int value(String value, int min, List<String> names) {
+        int index = names.indexOf(value.toUpperCase());
+        if (index >= 0) {
+            return index + min;
+        }
+
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value '" + value + "' in cron expression '" + expression + "'", e);
+        }
+    }
+
+    // The first matching time strictly after the given time, null if there is none within five years
+    public ZonedDateTime next(ZonedDateTime after) {
+        ZonedDateTime time = after.truncatedTo(ChronoUnit.SECONDS).plusSeconds(1);
+        ZonedDateTime limit = after.plusYears(MAX_YEARS_AHEAD);
+
+        while (time.isBefore(limit)) {
+            if (!months.get(time.getMonthValue())) {
+                time = time.plusMonths(1).withDayOfMonth(1).truncatedTo(ChronoUnit.DAYS);
+            } else if (!matchesDay(time)) {
+                time = time.plusDays(1).truncatedTo(ChronoUnit.DAYS);
+            } else if (!hours.get(time.getHour())) {
+                time = time.plusHours(1).truncatedTo(ChronoUnit.HOURS);
+            } else if (!minutes.get(time.getMinute())) {
+                time = time.plusMinutes(1).truncatedTo(ChronoUnit.MINUTES);
+            } else if (!seconds.get(time.getSecond())) {
+                time = time.plusSeconds(1);
+            } else {
+                return time;
+            }
+        }
+        return null;
+    }
+
+    private boolean matchesDay(ZonedDateTime time) {
+        boolean dayOfMonth = daysOfMonth.get(time.getDayOfMonth());
+        boolean dayOfWeek = daysOfWeek.get(time.getDayOfWeek().getValue() % 7);
+        if (daysOfMonthRestricted && daysOfWeekRestricted) {
+            return dayOfMonth || dayOfWeek;
+        }
+        return dayOfMonth && dayOfWeek;
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+}
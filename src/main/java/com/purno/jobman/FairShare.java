@@ -0,0 +1,18 @@
+package com.purno.jobman;
+
+import java.util.Map;
+
+// Weighted round-robin across job names: the n-th job of a group with weight w is due at virtual time n / w
+final class FairShare {
+    private FairShare() {
+    }
+
+    static int weight(Map<String, Integer> groupWeights, String group) {
+        Integer weight = group != null ? groupWeights.get(group) : null;
+        return weight != null && weight > 0 ? weight : 1;
+    }
+
+    static int compare(long rank, int weight, long otherRank, int otherWeight) {
+        return Long.compare(rank * otherWeight, otherRank * weight);
+    }
+}
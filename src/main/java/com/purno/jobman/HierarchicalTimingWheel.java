@@ -0,0 +1,129 @@
+package com.purno.jobman;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Hashed hierarchical timing wheel: adding and expiring a timer is O(1) no matter how many are pending.
+// Timers beyond the span of a wheel go to a coarser overflow wheel and cascade down as their time approaches.
+// Timers never fire early and at most one tick late. Not thread-safe, callers confine it to one thread.
+public class HierarchicalTimingWheel<T> {
+    private final long tickMillis;
+    private final int wheelSize;
+    private final long intervalMillis;
+    private final boolean root;
+    private final List<ArrayDeque<Timer<T>>> buckets;
+    private final ArrayDeque<Timer<T>> due = new ArrayDeque<>();
+    private long currentTime;
+    private HierarchicalTimingWheel<T> overflow;
+
+    public HierarchicalTimingWheel(long tickMillis, int wheelSize, long startMillis) {
+        this(tickMillis, wheelSize, startMillis, true);
+    }
+
+    private HierarchicalTimingWheel(long tickMillis, int wheelSize, long startMillis, boolean root) {
+        this.root = root;
+        this.tickMillis = tickMillis;
+        this.wheelSize = wheelSize;
+        this.intervalMillis = tickMillis * wheelSize;
+        this.currentTime = startMillis - startMillis % tickMillis;
+        this.buckets = new ArrayList<>(wheelSize);
+        for (int i = 0; i < wheelSize; i++) {
+            buckets.add(new ArrayDeque<>());
+        }
+    }
+
+    public Timer<T> schedule(T task, long deadlineMillis) {
+        Timer<T> timer = new Timer<>(task, deadlineMillis);
+        if (!add(timer)) {
+            due.add(timer);
+        }
+        return timer;
+    }
+
+    // Returns false when the timer is already due
+    private boolean add(Timer<T> timer) {
+        // The finest wheel rounds up so timers never fire before their deadline, overflow wheels round down
+        // so their buckets cascade into the finer wheel before any of their timers are due
+        long slot = root
+                ? Math.ceilDiv(timer.deadlineMillis, tickMillis)
+                : Math.floorDiv(timer.deadlineMillis, tickMillis);
+        if (slot * tickMillis <= currentTime) {
+            return false;
+        }
+        if (slot * tickMillis <= currentTime + intervalMillis) {
+            buckets.get((int) (slot % wheelSize)).add(timer);
+            return true;
+        }
+        if (overflow == null) {
+            overflow = new HierarchicalTimingWheel<>(intervalMillis, wheelSize, currentTime, false);
+        }
+        return overflow.add(timer);
+    }
+
+    // Moves the clock to nowMillis and hands every timer that came due to the consumer
+    public void advanceTo(long nowMillis, Consumer<T> expired) {
+        List<Timer<T>> expiredTimers = new ArrayList<>(due);
+        due.clear();
+
+        while (currentTime + tickMillis <= nowMillis) {
+            currentTime += tickMillis;
+            drain(buckets.get((int) ((currentTime / tickMillis) % wheelSize)), expiredTimers);
+            if (overflow != null) {
+                overflow.cascade(currentTime, this, expiredTimers);
+            }
+        }
+
+        for (Timer<T> timer : expiredTimers) {
+            if (!timer.cancelled) {
+                expired.accept(timer.task);
+            }
+        }
+    }
+
+    private void cascade(long nowMillis, HierarchicalTimingWheel<T> root, List<Timer<T>> expiredTimers) {
+        while (currentTime + tickMillis <= nowMillis) {
+            currentTime += tickMillis;
+            ArrayDeque<Timer<T>> bucket = buckets.get((int) ((currentTime / tickMillis) % wheelSize));
+            while (!bucket.isEmpty()) {
+                Timer<T> timer = bucket.poll();
+                if (!timer.cancelled && !root.add(timer)) {
+                    expiredTimers.add(timer);
+                }
+            }
+            if (overflow != null) {
+                overflow.cascade(currentTime, root, expiredTimers);
+            }
+        }
+    }
+
+    private void drain(ArrayDeque<Timer<T>> bucket, List<Timer<T>> expiredTimers) {
+        while (!bucket.isEmpty()) {
+            Timer<T> timer = bucket.poll();
+            if (!timer.cancelled) {
+                expiredTimers.add(timer);
+            }
+        }
+    }
+
+    public static final class Timer<T> {
+        private final T task;
+        private final long deadlineMillis;
+        private boolean cancelled = false;
+
+        private Timer(T task, long deadlineMillis) {
+            this.task = task;
+            this.deadlineMillis = deadlineMillis;
+        }
+
+        public long getDeadlineMillis() {
+            return deadlineMillis;
+        }
+
+        // Cancelled timers are dropped lazily when their bucket comes up
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+}
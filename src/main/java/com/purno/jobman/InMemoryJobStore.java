@@ -1,22 +1,108 @@
 package com.purno.jobman;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class InMemoryJobStore  implements JobStore {
-    private final Map<Long, Job<?>> jobs = new ConcurrentHashMap<>();
+    private static final NavigableSet<Long> EMPTY_IDS = new ConcurrentSkipListSet<>();
+
+    private final ConcurrentNavigableMap<Long, Job<?>> jobs = new ConcurrentSkipListMap<>();
+    private final AtomicLong jobCount = new AtomicLong(0);
     private final AtomicLong nextId = new AtomicLong(0);
 
+    // Secondary indexes over INIT jobs, kept in step with save() and delete() under indexLock.
+    // Ready jobs are queued per (name, heavyWeight) group in priority and then id order.
+    private final Map<GroupKey, NavigableSet<ReadyEntry>> readyGroups = new ConcurrentHashMap<>();
+    private final NavigableSet<ScheduledEntry> scheduledJobs = new ConcurrentSkipListSet<>();
+    private final Map<Long, IndexEntry> indexEntries = new HashMap<>();
+    private final Object indexLock = new Object();
+
+    // Ids by state and by name as of each job's last save, so queries only visit candidate jobs
+    private final Map<JobState, NavigableSet<Long>> idsByState = new ConcurrentHashMap<>();
+    private final Map<String, NavigableSet<Long>> idsByName = new ConcurrentHashMap<>();
+    private final Map<Long, QueryKey> queryKeys = new HashMap<>();
+
+    private final Map<Long, Set<Long>> dependents = new ConcurrentHashMap<>();
+
+    // Leases of claimed jobs, dropped once the job leaves WAITING or RUNNING
+    private final Map<Long, Lease> leases = new ConcurrentHashMap<>();
+
+    private final Path archiveFile;
+    private final JobCodec codec = new JacksonJobCodec(false);
+
+    public InMemoryJobStore() {
+        this(null);
+    }
+
+    // Jobs purged with archiving are appended to archiveFile, one "<implementation class> <json>" line each
+    public InMemoryJobStore(Path archiveFile) {
+        this.archiveFile = archiveFile;
+    }
+
     @Override
     public void save(Job<?> job) {
         if (job.getId() <= 0) {
             job.setId(nextId.incrementAndGet());
+        } else {
+            nextId.accumulateAndGet(job.getId(), Math::max);
+        }
+        if (jobs.put(job.getId(), job) == null) {
+            jobCount.incrementAndGet();
+            if (job.getDependsOn() != null) {
+                job.getDependsOn().forEach(parentId ->
+                        dependents.computeIfAbsent(parentId, id -> ConcurrentHashMap.newKeySet()).add(job.getId()));
+            }
         }
 
-        jobs.put(job.getId(), job);
+        synchronized (indexLock) {
+            index(job);
+            if (!isLeased(job)) {
+                leases.remove(job.getId());
+            }
+        }
+    }
+
+    @Override
+    public void saveAll(Collection<? extends Job<?>> jobs) {
+        assignIds(jobs);
+        jobs.forEach(this::save);
+    }
+
+    // Hands the new jobs one contiguous block of ids in a single step
+    void assignIds(Collection<? extends Job<?>> jobs) {
+        long newJobs = jobs.stream().filter(job -> job.getId() <= 0).count();
+        long id = nextId.getAndAdd(newJobs);
+        for (Job<?> job : jobs) {
+            if (job.getId() <= 0) {
+                job.setId(++id);
+            }
+        }
     }
 
     @Override
@@ -26,29 +112,527 @@ public class InMemoryJobStore  implements JobStore {
 
     @Override
     public void delete(long jobId) {
-        jobs.remove(jobId);
+        Job<?> removed = jobs.remove(jobId);
+        if (removed != null) {
+            jobCount.decrementAndGet();
+            dependents.remove(jobId);
+            if (removed.getDependsOn() != null) {
+                removed.getDependsOn().forEach(parentId -> {
+                    Set<Long> children = dependents.get(parentId);
+                    if (children != null) {
+                        children.remove(jobId);
+                    }
+                });
+            }
+        }
+
+        synchronized (indexLock) {
+            unindex(jobId);
+            unindexForQuery(jobId);
+            leases.remove(jobId);
+        }
     }
 
     @Override
     public List<Job<?>> getAll() {
-        return jobs.values().stream()
-                .sorted((j1, j2) -> Long.compare(j2.getId(), j1.getId()))
+        return List.copyOf(jobs.descendingMap().values());
+    }
+
+    @Override
+    public List<Job<?>> getPage(long afterId, int limit) {
+        return jobs.tailMap(afterId, false).values().stream()
+                .limit(Math.max(limit, 0))
+                .toList();
+    }
+
+    // pageSize does not apply: the skip list is already walked lazily in id order without copying any page
+    @Override
+    public Stream<Job<?>> stream(int pageSize) {
+        return jobs.values().stream();
+    }
+
+    // The stored job is the only copy of its result, openResult encodes it on demand
+    @Override
+    @SuppressWarnings("unchecked")
+    public <R> R getResult(long jobId) {
+        Job<?> job = finishedWithResult(jobId);
+        return job != null ? (R) job.getResult() : null;
+    }
+
+    @Override
+    public InputStream openResult(long jobId) {
+        Job<?> job = finishedWithResult(jobId);
+        if (job == null) {
+            return null;
+        }
+
+        try {
+            return new ByteArrayInputStream(codec.encodeResult(job));
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading result of job " + jobId, e);
+        }
+    }
+
+    private Job<?> finishedWithResult(long jobId) {
+        Job<?> job = jobs.get(jobId);
+        if (job == null || job.getResult() == null || job.getState() == null || !job.getState().isDone()) {
+            return null;
+        }
+        return job;
+    }
+
+    @Override
+    public List<Job<?>> getDependents(long jobId) {
+        return dependents.getOrDefault(jobId, Set.of()).stream()
+                .sorted()
+                .map(jobs::get)
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    @Override
+    public boolean hasDependents(long jobId) {
+        return !dependents.getOrDefault(jobId, Set.of()).isEmpty();
+    }
+
+    @Override
+    public List<Job<?>> getByState(JobState state, int limit) {
+        // Walks only the state's ids; a job changed in place is listed under its new state once it is saved
+        return idsByState.getOrDefault(state, EMPTY_IDS).stream()
+                .map(jobs::get)
+                .filter(job -> job != null && job.getState() == state)
+                .limit(Math.max(limit, 0))
                 .toList();
     }
 
     @Override
-    public List<Job<?>> getForRunningNow(boolean includeHeavyWeight) {
+    public List<Job<?>> query(JobQuery query) {
+        return candidates(query)
+                .filter(query::matches)
+                .limit(query.getLimit())
+                .toList();
+    }
+
+    @Override
+    public long count(JobQuery query) {
+        JobQuery unpaged = query.after(0);
+        return candidates(unpaged)
+                .filter(unpaged::matches)
+                .count();
+    }
+
+    // Walks the state index when states are given, else the name index, else all jobs, always in id order.
+    // The indexes follow save(), so a job changed in place is found under its new state once it is saved
+    private Stream<Job<?>> candidates(JobQuery query) {
+        Iterator<Long> ids;
+        if (!query.getStates().isEmpty()) {
+            List<Iterator<Long>> sources = query.getStates().stream()
+                    .map(state -> idsByState.getOrDefault(state, EMPTY_IDS).tailSet(query.getAfterId(), false).iterator())
+                    .toList();
+            ids = sources.size() == 1 ? sources.getFirst() : new MergedIds(sources);
+        } else if (query.getName() != null) {
+            ids = idsByName.getOrDefault(query.getName(), EMPTY_IDS).tailSet(query.getAfterId(), false).iterator();
+        } else {
+            return jobs.tailMap(query.getAfterId(), false).values().stream();
+        }
+
+        Iterable<Long> iterable = () -> ids;
+        return StreamSupport.stream(iterable.spliterator(), false)
+                .map(jobs::get)
+                .filter(Objects::nonNull);
+    }
+
+    @Override
+    public List<Job<?>> getForRunningNow(int limit, int heavyWeightLimit) {
+        return getForRunningNow(limit, heavyWeightLimit, Map.of(), Map.of());
+    }
+
+    // Merges the per-group queues, taking the next job from the group with the smallest weighted rank.
+    // A group whose next job does not fit the free resources is left for this round, keeping its jobs in order
+    private List<Job<?>> getForRunningNow(int limit, int heavyWeightLimit, Map<String, Integer> groupWeights,
+                                          Map<String, Integer> availableResources) {
+        if (limit <= 0) {
+            return List.of();
+        }
+
         Instant now = Instant.now();
-        return jobs.values().stream()
-                .filter(j -> j.getState() == JobState.INIT)
-                .filter(j -> j.getScheduledTime() == null || j.getScheduledTime().compareTo(now) <= 0)
-                .filter(j -> !j.isHeavyWeight() || includeHeavyWeight)
-                .sorted((j1, j2) -> Long.compare(j2.getId(), j1.getId()))
+        promoteDueJobs(now);
+
+        PriorityQueue<GroupCursor> cursors = new PriorityQueue<>();
+        readyGroups.forEach((group, readyJobs) -> {
+            if (!group.heavyWeight() || heavyWeightLimit > 0) {
+                GroupCursor cursor = new GroupCursor(group, readyJobs.iterator(), FairShare.weight(groupWeights, group.name()));
+                if (cursor.advance()) {
+                    cursors.add(cursor);
+                }
+            }
+        });
+
+        Map<String, Integer> freeResources = new HashMap<>(availableResources);
+        List<Job<?>> runnable = new ArrayList<>();
+        int heavyWeightCount = 0;
+        while (runnable.size() < limit && !cursors.isEmpty()) {
+            GroupCursor cursor = cursors.poll();
+            if (cursor.group.heavyWeight() && heavyWeightCount >= heavyWeightLimit) {
+                continue;
+            }
+
+            Job<?> job = jobs.get(cursor.head.jobId());
+            if (job != null && job.getState() == JobState.INIT
+                    && (job.getScheduledTime() == null || !job.getScheduledTime().isAfter(now))) {
+                if (!ResourcePools.reserve(freeResources, job.getResources())) {
+                    continue;
+                }
+                runnable.add(job);
+                cursor.rank++;
+                if (cursor.group.heavyWeight()) {
+                    heavyWeightCount++;
+                }
+            }
+
+            if (cursor.advance()) {
+                cursors.add(cursor);
+            }
+        }
+
+        return runnable;
+    }
+
+    @Override
+    public List<Job<?>> claim(String nodeId, int limit, int heavyWeightLimit, Map<String, Integer> groupWeights, Duration leaseDuration,
+                              Map<String, Integer> availableResources) {
+        synchronized (indexLock) {
+            List<Job<?>> claimed = getForRunningNow(limit, heavyWeightLimit, groupWeights, availableResources);
+
+            Instant leaseExpiresAt = leaseDuration != null ? Instant.now().plus(leaseDuration) : null;
+            for (Job<?> job : claimed) {
+                job.setState(JobState.WAITING);
+                job.setOwner(nodeId);
+                index(job);
+                if (leaseExpiresAt != null) {
+                    leases.put(job.getId(), new Lease(nodeId, leaseExpiresAt));
+                }
+            }
+
+            return claimed;
+        }
+    }
+
+    @Override
+    public int renewLeases(String nodeId, Duration leaseDuration) {
+        Instant leaseExpiresAt = Instant.now().plus(leaseDuration);
+        int renewed = 0;
+        synchronized (indexLock) {
+            for (Map.Entry<Long, Lease> lease : leases.entrySet()) {
+                if (lease.getValue().owner().equals(nodeId)) {
+                    lease.setValue(new Lease(nodeId, leaseExpiresAt));
+                    renewed++;
+                }
+            }
+        }
+        return renewed;
+    }
+
+    @Override
+    public List<Job<?>> reclaimExpiredLeases(int limit, JobState targetState, String excludedOwner) {
+        checkReclaimTarget(targetState);
+
+        Instant now = Instant.now();
+        List<Job<?>> reclaimed = new ArrayList<>();
+        synchronized (indexLock) {
+            Iterator<Map.Entry<Long, Lease>> iterator = leases.entrySet().iterator();
+            while (iterator.hasNext() && reclaimed.size() < limit) {
+                Map.Entry<Long, Lease> lease = iterator.next();
+                if (!lease.getValue().expiresAt().isBefore(now) || (excludedOwner != null && excludedOwner.equals(lease.getValue().owner()))) {
+                    continue;
+                }
+
+                iterator.remove();
+                Job<?> job = jobs.get(lease.getKey());
+                if (job != null && isLeased(job)) {
+                    job.setState(targetState);
+                    job.setOwner(null);
+                    job.setMessage("Lease of node " + lease.getValue().owner() + " expired");
+                    index(job);
+                    reclaimed.add(job);
+                }
+            }
+        }
+        return reclaimed;
+    }
+
+    long getLastId() {
+        return nextId.get();
+    }
+
+    // Keeps ids of deleted jobs from being handed out again after a restore
+    void reserveIds(long lastId) {
+        nextId.accumulateAndGet(lastId, Math::max);
+    }
+
+    // Gives a restored WAITING or RUNNING job a lease that has already expired, so the next reaper run recovers it
+    void expireLease(Job<?> job) {
+        leases.put(job.getId(), new Lease(Objects.requireNonNullElse(job.getOwner(), "unknown"), Instant.EPOCH));
+    }
+
+    private static void checkReclaimTarget(JobState targetState) {
+        if (targetState != JobState.INIT && targetState != JobState.FAILED) {
+            throw new IllegalArgumentException("Expired jobs can only be moved to INIT or FAILED, not " + targetState);
+        }
+    }
+
+    private static boolean isLeased(Job<?> job) {
+        return job.getState() == JobState.WAITING || job.getState() == JobState.RUNNING;
+    }
+
+    @Override
+    public int purge(JobState state, Instant endedBefore, int limit, boolean archive) {
+        if (!state.isDone()) {
+            throw new IllegalArgumentException("Only finished jobs can be purged, not " + state);
+        }
+
+        // Walks only the purged state's ids, however many jobs are in other states
+        List<Job<?>> expired = idsByState.getOrDefault(state, EMPTY_IDS).stream()
+                .map(jobs::get)
+                .filter(j -> j != null && j.getState() == state && j.getEndTime() != null && j.getEndTime().isBefore(endedBefore))
+                .limit(Math.max(limit, 0))
                 .toList();
+        if (archive && !expired.isEmpty()) {
+            archive(expired);
+        }
+
+        expired.forEach(job -> delete(job.getId()));
+        return expired.size();
+    }
+
+    private synchronized void archive(List<Job<?>> purged) {
+        if (archiveFile == null) {
+            throw new IllegalStateException("No archive file configured");
+        }
+
+        try (Writer writer = Files.newBufferedWriter(archiveFile, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            for (Job<?> job : purged) {
+                writer.write(job.getClass().getName());
+                writer.write(' ');
+                writer.write(new String(codec.encode(job), StandardCharsets.UTF_8));
+                writer.write('\n');
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error archiving jobs to " + archiveFile, e);
+        }
+    }
+
+    @Override
+    public Instant getNextScheduledTime() {
+        promoteDueJobs(Instant.now());
+
+        ScheduledEntry next = scheduledJobs.isEmpty() ? null : scheduledJobs.first();
+        return next != null ? next.scheduledTime() : null;
+    }
+
+    @Override
+    public Instant getLastScheduledTime(String scheduleName) {
+        return jobs.values().stream()
+                .filter(j -> scheduleName.equals(j.getScheduleName()) && j.getScheduledTime() != null)
+                .map(Job::getScheduledTime)
+                .max(Instant::compareTo)
+                .orElse(null);
     }
 
     @Override
     public long count() {
-        return jobs.size();
+        return jobCount.get();
+    }
+
+    private void promoteDueJobs(Instant now) {
+        synchronized (indexLock) {
+            while (!scheduledJobs.isEmpty() && !scheduledJobs.first().scheduledTime().isAfter(now)) {
+                ScheduledEntry entry = scheduledJobs.pollFirst();
+                IndexEntry indexEntry = indexEntries.get(entry.jobId());
+                addReady(indexEntry.group(), new ReadyEntry(indexEntry.priority(), entry.jobId()));
+                indexEntries.put(entry.jobId(), new IndexEntry(indexEntry.group(), indexEntry.priority(), null));
+            }
+        }
+    }
+
+    private void index(Job<?> job) {
+        indexForQuery(job);
+        unindex(job.getId());
+        if (job.getState() != JobState.INIT) {
+            return;
+        }
+
+        GroupKey group = new GroupKey(job.getName(), job.isHeavyWeight());
+        Instant scheduledTime = job.getScheduledTime();
+        if (scheduledTime != null && scheduledTime.isAfter(Instant.now())) {
+            scheduledJobs.add(new ScheduledEntry(scheduledTime, job.getId()));
+            indexEntries.put(job.getId(), new IndexEntry(group, job.getPriority(), scheduledTime));
+        } else {
+            addReady(group, new ReadyEntry(job.getPriority(), job.getId()));
+            indexEntries.put(job.getId(), new IndexEntry(group, job.getPriority(), null));
+        }
+    }
+
+    private void unindex(long jobId) {
+        IndexEntry indexEntry = indexEntries.remove(jobId);
+        if (indexEntry == null) {
+            return;
+        }
+
+        if (indexEntry.scheduledTime() != null) {
+            scheduledJobs.remove(new ScheduledEntry(indexEntry.scheduledTime(), jobId));
+        } else {
+            NavigableSet<ReadyEntry> readyJobs = readyGroups.get(indexEntry.group());
+            if (readyJobs != null) {
+                readyJobs.remove(new ReadyEntry(indexEntry.priority(), jobId));
+                if (readyJobs.isEmpty()) {
+                    readyGroups.remove(indexEntry.group());
+                }
+            }
+        }
+    }
+
+    private void indexForQuery(Job<?> job) {
+        QueryKey key = new QueryKey(job.getState(), job.getName());
+        QueryKey previous = queryKeys.put(job.getId(), key);
+        if (key.equals(previous)) {
+            return;
+        }
+
+        if (previous != null) {
+            removeQueryKey(job.getId(), previous);
+        }
+        if (key.state() != null) {
+            idsByState.computeIfAbsent(key.state(), s -> new ConcurrentSkipListSet<>()).add(job.getId());
+        }
+        if (key.name() != null) {
+            idsByName.computeIfAbsent(key.name(), n -> new ConcurrentSkipListSet<>()).add(job.getId());
+        }
+    }
+
+    private void unindexForQuery(long jobId) {
+        QueryKey previous = queryKeys.remove(jobId);
+        if (previous != null) {
+            removeQueryKey(jobId, previous);
+        }
+    }
+
+    private void removeQueryKey(long jobId, QueryKey key) {
+        if (key.state() != null) {
+            idsByState.getOrDefault(key.state(), EMPTY_IDS).remove(jobId);
+        }
+        if (key.name() != null) {
+            NavigableSet<Long> ids = idsByName.get(key.name());
+            if (ids != null) {
+                ids.remove(jobId);
+                if (ids.isEmpty()) {
+                    idsByName.remove(key.name());
+                }
+            }
+        }
+    }
+
+    private void addReady(GroupKey group, ReadyEntry entry) {
+        readyGroups.computeIfAbsent(group, g -> new ConcurrentSkipListSet<>()).add(entry);
+    }
+
+    private record Lease(String owner, Instant expiresAt) {}
+
+    private record QueryKey(JobState state, String name) {}
+
+    // Merges ascending id iterators into one ascending iterator, skipping ids seen twice while a job changed state
+    private static class MergedIds implements Iterator<Long> {
+        private final PriorityQueue<IdCursor> cursors = new PriorityQueue<>();
+        private long last = Long.MIN_VALUE;
+        private Long next;
+
+        private MergedIds(List<Iterator<Long>> sources) {
+            sources.forEach(source -> {
+                if (source.hasNext()) {
+                    cursors.add(new IdCursor(source.next(), source));
+                }
+            });
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && !cursors.isEmpty()) {
+                IdCursor cursor = cursors.poll();
+                if (cursor.id() > last) {
+                    next = cursor.id();
+                    last = next;
+                }
+                if (cursor.rest().hasNext()) {
+                    cursors.add(new IdCursor(cursor.rest().next(), cursor.rest()));
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public Long next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Long id = next;
+            next = null;
+            return id;
+        }
+    }
+
+    private record IdCursor(long id, Iterator<Long> rest) implements Comparable<IdCursor> {
+        @Override
+        public int compareTo(IdCursor other) {
+            return Long.compare(id, other.id);
+        }
+    }
+
+    private record GroupKey(String name, boolean heavyWeight) {}
+
+    private record IndexEntry(GroupKey group, int priority, Instant scheduledTime) {}
+
+    private record ReadyEntry(int priority, long jobId) implements Comparable<ReadyEntry> {
+        @Override
+        public int compareTo(ReadyEntry other) {
+            int result = Integer.compare(other.priority, priority);
+            return result != 0 ? result : Long.compare(jobId, other.jobId);
+        }
+    }
+
+    private static class GroupCursor implements Comparable<GroupCursor> {
+        private final GroupKey group;
+        private final Iterator<ReadyEntry> readyJobs;
+        private final int weight;
+        private ReadyEntry head;
+        private long rank = 1;
+
+        private GroupCursor(GroupKey group, Iterator<ReadyEntry> readyJobs, int weight) {
+            this.group = group;
+            this.readyJobs = readyJobs;
+            this.weight = weight;
+        }
+
+        private boolean advance() {
+            head = readyJobs.hasNext() ? readyJobs.next() : null;
+            return head != null;
+        }
+
+        @Override
+        public int compareTo(GroupCursor other) {
+            int result = Integer.compare(other.head.priority(), head.priority());
+            if (result == 0) {
+                result = FairShare.compare(rank, weight, other.rank, other.weight);
+            }
+            return result != 0 ? result : Long.compare(head.jobId(), other.head.jobId());
+        }
+    }
+
+    private record ScheduledEntry(Instant scheduledTime, long jobId) implements Comparable<ScheduledEntry> {
+        @Override
+        public int compareTo(ScheduledEntry other) {
+            int result = scheduledTime.compareTo(other.scheduledTime);
+            return result != 0 ? result : Long.compare(jobId, other.jobId);
+        }
     }
 }
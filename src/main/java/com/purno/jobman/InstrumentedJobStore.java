@@ -0,0 +1,171 @@
+package com.purno.jobman;
+
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+// Decorates any JobStore with latency metrics and JFR events per operation
+public class InstrumentedJobStore implements JobStore, AutoCloseable {
+    private final JobStore delegate;
+    private final JobMetrics metrics;
+
+    public InstrumentedJobStore(JobStore delegate, JobMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics == null ? JobMetrics.NOOP : metrics;
+    }
+
+    public JobStore getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public void save(Job<?> job) {
+        measure("save", () -> delegate.save(job));
+    }
+
+    @Override
+    public void saveAll(Collection<? extends Job<?>> jobs) {
+        measure("saveAll", () -> delegate.saveAll(jobs));
+    }
+
+    @Override
+    public Job<?> get(long jobId) {
+        return measure("get", () -> delegate.get(jobId));
+    }
+
+    @Override
+    public void delete(long jobId) {
+        measure("delete", () -> delegate.delete(jobId));
+    }
+
+    @Override
+    public List<Job<?>> getAll() {
+        return measure("getAll", delegate::getAll);
+    }
+
+    @Override
+    public List<Job<?>> getPage(long afterId, int limit) {
+        return measure("getPage", () -> delegate.getPage(afterId, limit));
+    }
+
+    @Override
+    public Stream<Job<?>> stream(int pageSize) {
+        return delegate.stream(pageSize);
+    }
+
+    @Override
+    public <R> R getResult(long jobId) {
+        return measure("getResult", () -> delegate.<R>getResult(jobId));
+    }
+
+    @Override
+    public InputStream openResult(long jobId) {
+        return measure("openResult", () -> delegate.openResult(jobId));
+    }
+
+    @Override
+    public List<Job<?>> getDependents(long jobId) {
+        return measure("getDependents", () -> delegate.getDependents(jobId));
+    }
+
+    @Override
+    public boolean hasDependents(long jobId) {
+        return measure("hasDependents", () -> delegate.hasDependents(jobId));
+    }
+
+    @Override
+    public List<Job<?>> getByState(JobState state, int limit) {
+        return measure("getByState", () -> delegate.getByState(state, limit));
+    }
+
+    @Override
+    public List<Job<?>> query(JobQuery query) {
+        return measure("query", () -> delegate.query(query));
+    }
+
+    @Override
+    public long count(JobQuery query) {
+        return measure("countQuery", () -> delegate.count(query));
+    }
+
+    @Override
+    public List<Job<?>> getForRunningNow(int limit, int heavyWeightLimit) {
+        return measure("getForRunningNow", () -> delegate.getForRunningNow(limit, heavyWeightLimit));
+    }
+
+    @Override
+    public List<Job<?>> claim(String nodeId, int limit, int heavyWeightLimit, Map<String, Integer> groupWeights, Duration leaseDuration,
+                              Map<String, Integer> availableResources) {
+        return measure("claim", () -> delegate.claim(nodeId, limit, heavyWeightLimit, groupWeights, leaseDuration, availableResources));
+    }
+
+    @Override
+    public int renewLeases(String nodeId, Duration leaseDuration) {
+        return measure("renewLeases", () -> delegate.renewLeases(nodeId, leaseDuration));
+    }
+
+    @Override
+    public List<Job<?>> reclaimExpiredLeases(int limit, JobState targetState, String excludedOwner) {
+        return measure("reclaimExpiredLeases", () -> delegate.reclaimExpiredLeases(limit, targetState, excludedOwner));
+    }
+
+    @Override
+    public int purge(JobState state, Instant endedBefore, int limit, boolean archive) {
+        return measure("purge", () -> delegate.purge(state, endedBefore, limit, archive));
+    }
+
+    @Override
+    public Instant getNextScheduledTime() {
+        return measure("getNextScheduledTime", delegate::getNextScheduledTime);
+    }
+
+    @Override
+    public Instant getLastScheduledTime(String scheduleName) {
+        return measure("getLastScheduledTime", () -> delegate.getLastScheduledTime(scheduleName));
+    }
+
+    @Override
+    public long count() {
+        return measure("count", () -> delegate.count());
+    }
+
+    @Override
+    public void flush() {
+        measure("flush", delegate::flush);
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (delegate instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+
+    private void measure(String operation, Runnable call) {
+        measure(operation, () -> {
+            call.run();
+            return null;
+        });
+    }
+
+    private <T> T measure(String operation, Supplier<T> call) {
+        JobStoreEvent event = new JobStoreEvent();
+        event.begin();
+        long start = System.nanoTime();
+        try {
+            return call.get();
+        } finally {
+            metrics.recordLatency(JobMetrics.STORE_LATENCY, operation, System.nanoTime() - start);
+            if (event.shouldCommit()) {
+                event.storeClass = delegate.getClass();
+                event.operation = operation;
+                event.commit();
+            }
+        }
+    }
+}
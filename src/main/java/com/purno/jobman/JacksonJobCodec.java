@@ -0,0 +1,113 @@
+package com.purno.jobman;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+public class JacksonJobCodec implements JobCodec {
+    // Binary payloads start with a format marker, JSON payloads always start with '{'
+    private static final byte SMILE_V1 = 1;
+
+    private final boolean binary;
+    private final ObjectMapper jsonMapper;
+    private final ObjectMapper smileMapper;
+
+    private final Map<String, Class<?>> classes = new ConcurrentHashMap<>();
+    private final Map<Class<?>, ObjectReader> jsonReaders = new ConcurrentHashMap<>();
+    private final Map<Class<?>, ObjectReader> smileReaders = new ConcurrentHashMap<>();
+    private final Map<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+    private final Map<Class<?>, JavaType> resultTypes = new ConcurrentHashMap<>();
+
+    public JacksonJobCodec(boolean binary) {
+        this(binary, mapper -> {});
+    }
+
+    public JacksonJobCodec(boolean binary, Consumer<ObjectMapper> mapperConfigurer) {
+        this.binary = binary;
+        this.jsonMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+        this.smileMapper = new ObjectMapper(new SmileFactory()).registerModule(new JavaTimeModule());
+        mapperConfigurer.accept(jsonMapper);
+        mapperConfigurer.accept(smileMapper);
+    }
+
+    @Override
+    public boolean isBinary() {
+        return binary;
+    }
+
+    @Override
+    public byte[] encode(Job<?> job) throws IOException {
+        ObjectWriter writer = writers.computeIfAbsent(job.getClass(), (binary ? smileMapper : jsonMapper)::writerFor);
+        if (!binary) {
+            return writer.writeValueAsBytes(job);
+        }
+
+        byte[] encoded = writer.writeValueAsBytes(job);
+        byte[] data = new byte[encoded.length + 1];
+        data[0] = SMILE_V1;
+        System.arraycopy(encoded, 0, data, 1, encoded.length);
+        return data;
+    }
+
+    @Override
+    public Job<?> decode(String implementationClass, byte[] data) throws IOException {
+        Class<?> clazz = classes.computeIfAbsent(implementationClass, JacksonJobCodec::loadClass);
+
+        if (data.length > 0 && data[0] == SMILE_V1) {
+            return smileReaders.computeIfAbsent(clazz, smileMapper::readerFor).readValue(data, 1, data.length - 1);
+        }
+        return jsonReaders.computeIfAbsent(clazz, jsonMapper::readerFor).readValue(data);
+    }
+
+    @Override
+    public byte[] encodeResult(Job<?> job) throws IOException {
+        if (!binary) {
+            return jsonMapper.writeValueAsBytes(job.getResult());
+        }
+
+        byte[] encoded = smileMapper.writeValueAsBytes(job.getResult());
+        byte[] data = new byte[encoded.length + 1];
+        data[0] = SMILE_V1;
+        System.arraycopy(encoded, 0, data, 1, encoded.length);
+        return data;
+    }
+
+    @Override
+    public Object decodeResult(String implementationClass, byte[] data) throws IOException {
+        Class<?> clazz = classes.computeIfAbsent(implementationClass, JacksonJobCodec::loadClass);
+        JavaType resultType = resultTypes.computeIfAbsent(clazz, this::resolveResultType);
+
+        if (data.length > 0 && data[0] == SMILE_V1) {
+            return smileMapper.readerFor(resultType).readValue(data, 1, data.length - 1);
+        }
+        return jsonMapper.readerFor(resultType).readValue(data);
+    }
+
+    // The declared type of the result property with the job's type arguments applied, e.g. Integer for Job<Integer>
+    private JavaType resolveResultType(Class<?> clazz) {
+        return jsonMapper.getDeserializationConfig()
+                .introspect(jsonMapper.constructType(clazz))
+                .findProperties().stream()
+                .filter(property -> property.getName().equals("result"))
+                .findFirst()
+                .map(BeanPropertyDefinition::getPrimaryType)
+                .orElseGet(() -> jsonMapper.constructType(Object.class));
+    }
+
+    private static Class<?> loadClass(String className) {
+        try {
+            return Class.forName(className);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Job class " + className + " not found", e);
+        }
+    }
+}
@@ -3,6 +3,8 @@ package com.purno.jobman;
 import java.io.Serializable;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.List;
+import java.util.Map;
 
 public interface Job<R> extends Serializable {
     long getId();
@@ -20,15 +22,48 @@ public interface Job<R> extends Serializable {
     String getMessage();
     void setMessage(String message);
 
+    // Percentage done as last published by the job, null when the job does not report progress
+    Double getProgress();
+    void setProgress(Double progress);
+
+    Map<String, Long> getCounters();
+    void setCounters(Map<String, Long> counters);
+
+    String getOwner();
+    void setOwner(String owner);
+
     boolean isHeavyWeight();
     void setHeavyWeight(boolean heavyWeight);
 
+    // Permits needed from named ResourcePools while the job runs, e.g. {"db": 2}
+    Map<String, Integer> getResources();
+    void setResources(Map<String, Integer> resources);
+
+    // Higher priorities are dispatched first, fair share only applies between jobs of equal priority
+    int getPriority();
+    void setPriority(int priority);
+
+    // Falls back to the JobManager's default retry policy when null
+    RetryPolicy getRetryPolicy();
+    void setRetryPolicy(RetryPolicy retryPolicy);
+
+    int getAttempts();
+    void setAttempts(int attempts);
+
     boolean isCancelable();
     void setCancelable(boolean cancelable);
 
     Instant getScheduledTime();
     void setScheduledTime(Instant scheduledTime);
 
+    // Ids of jobs that must succeed before this one runs, fixed once the job is added
+    List<Long> getDependsOn();
+    void setDependsOn(List<Long> dependsOn);
+
+    // Name of the RecurringSchedule that created this job, null for jobs added directly
+    String getScheduleName();
+    void setScheduleName(String scheduleName);
+
     Instant getStartTime();
     void setStartTime(Instant startTime);
 
@@ -38,7 +73,14 @@ public interface Job<R> extends Serializable {
     Duration getDuration();
     void setDuration(Duration duration);
 
-    void run();
+    // Implement one of the two; JobManager calls run(JobContext)
+    default void run() {
+        throw new UnsupportedOperationException("Job " + getClass().getName() + " must implement run() or run(JobContext)");
+    }
+
+    default void run(JobContext context) {
+        run();
+    }
 
     R getResult();
     void setResult(R result);
@@ -0,0 +1,19 @@
+package com.purno.jobman;
+
+import java.io.IOException;
+
+public interface JobCodec {
+    boolean isBinary();
+
+    // Stores write the encoded job as is, so a codec given to SqlJobStore should leave out the result and the
+    // properties that have their own columns, as its default codec does
+    byte[] encode(Job<?> job) throws IOException;
+
+    // Must also accept plain JSON, which is how jobs written before codecs existed are stored
+    Job<?> decode(String implementationClass, byte[] data) throws IOException;
+
+    // Results are encoded on their own so stores can keep them apart from the job payload
+    byte[] encodeResult(Job<?> job) throws IOException;
+
+    Object decodeResult(String implementationClass, byte[] data) throws IOException;
+}
@@ -0,0 +1,185 @@
+package com.purno.jobman;
+
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+
+// Handed to a running job to report incremental progress. Updates only touch this context;
+// they are copied to the job and published (saved and reported) at most once per publish interval.
+// Also tells the job when it was canceled or paused, so it can stop at a safe point even when it ignores interrupts.
+public class JobContext {
+    private final Job<?> job;
+    private final Consumer<Job<?>> publisher;
+    private final ScheduledExecutorService timer;
+    private final long publishIntervalNanos;
+    private final LongFunction<Object> resultLookup;
+
+    private final Map<String, Long> counters = new ConcurrentHashMap<>();
+    private volatile Double progress;
+    private volatile String message;
+    private volatile boolean dirty = false;
+    private volatile JobState stopRequest;
+    private volatile boolean stopSeen = false;
+
+    private long lastPublished;
+    private ScheduledFuture<?> trailingPublish;
+    private boolean closed = false;
+
+    JobContext(Job<?> job, Consumer<Job<?>> publisher, ScheduledExecutorService timer, long publishIntervalNanos,
+               LongFunction<Object> resultLookup) {
+        this.job = job;
+        this.publisher = publisher;
+        this.timer = timer;
+        this.publishIntervalNanos = publishIntervalNanos;
+        this.resultLookup = resultLookup;
+        this.progress = job.getProgress();
+        if (job.getCounters() != null) {
+            counters.putAll(job.getCounters());
+        }
+        this.lastPublished = System.nanoTime();
+    }
+
+    public Job<?> getJob() {
+        return job;
+    }
+
+    // Result of one of the jobs this job depends on, null when it is not available
+    @SuppressWarnings("unchecked")
+    public <R> R getDependencyResult(long jobId) {
+        if (job.getDependsOn() == null || !job.getDependsOn().contains(jobId)) {
+            throw new IllegalArgumentException("Job " + job.getId() + " does not depend on job " + jobId);
+        }
+
+        return (R) resultLookup.apply(jobId);
+    }
+
+    public void setProgress(double percent) {
+        progress = Math.clamp(percent, 0.0, 100.0);
+        changed();
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+        changed();
+    }
+
+    public void update(double percent, String message) {
+        this.progress = Math.clamp(percent, 0.0, 100.0);
+        this.message = message;
+        changed();
+    }
+
+    public long increment(String counter) {
+        return add(counter, 1);
+    }
+
+    public long add(String counter, long delta) {
+        long value = counters.merge(counter, delta, Long::sum);
+        changed();
+        return value;
+    }
+
+    public long getCounter(String counter) {
+        return counters.getOrDefault(counter, 0L);
+    }
+
+    // True once the job was canceled or paused; a cheap volatile read meant to be polled between units of work.
+    // A job that sees it should return, after a checkpoint when it wants a resumed run to continue from there
+    public boolean isStopRequested() {
+        if (stopRequest != null) {
+            stopSeen = true;
+            return true;
+        }
+        return false;
+    }
+
+    public void throwIfStopRequested() {
+        if (isStopRequested()) {
+            throw new CancellationException("Job " + job.getId() + " was asked to stop");
+        }
+    }
+
+    // Saves the job now, including its own fields, so a resumed or retried run can continue from them
+    public synchronized void checkpoint() {
+        if (!closed) {
+            publish();
+        }
+    }
+
+    // The state the job ends up in once it stops, CANCELED or PAUSED
+    void requestStop(JobState state) {
+        stopRequest = state;
+    }
+
+    // The requested state once the job saw the stop request, null when it finished without looking
+    JobState stoppedAs() {
+        return stopSeen ? stopRequest : null;
+    }
+
+    // Publishes pending updates now, regardless of the rate limit
+    public synchronized void flush() {
+        if (dirty && !closed) {
+            publish();
+        }
+    }
+
+    private void changed() {
+        dirty = true;
+        if (System.nanoTime() - lastPublished >= publishIntervalNanos) {
+            flush();
+        } else {
+            scheduleTrailingPublish();
+        }
+    }
+
+    // Makes sure the last update of a burst is published once the interval has passed
+    private synchronized void scheduleTrailingPublish() {
+        if (timer == null || closed || (trailingPublish != null && !trailingPublish.isDone())) {
+            return;
+        }
+
+        long delay = Math.max(0, publishIntervalNanos - (System.nanoTime() - lastPublished));
+        // The timer is the dispatch thread, so the store write happens elsewhere
+        try {
+            trailingPublish = timer.schedule(() -> Thread.startVirtualThread(this::flush), delay, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // Shutting down, the final save of the job publishes the latest values
+            trailingPublish = null;
+        }
+    }
+
+    private void publish() {
+        dirty = false;
+        apply();
+        lastPublished = System.nanoTime();
+        publisher.accept(job);
+    }
+
+    private void apply() {
+        job.setProgress(progress);
+        if (message != null) {
+            job.setMessage(message);
+        }
+        if (!counters.isEmpty()) {
+            job.setCounters(Map.copyOf(counters));
+        }
+    }
+
+    // Copies the latest values onto the job without publishing; the caller saves the job itself afterwards
+    synchronized void close() {
+        closed = true;
+        if (trailingPublish != null) {
+            trailingPublish.cancel(false);
+        }
+        if (dirty) {
+            dirty = false;
+            apply();
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.purno.jobman;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.purno.jobman.JobDispatch")
+@Label("Job Dispatch")
+@Category("Job Manager")
+@Description("One scheduler tick claiming jobs from the store")
+class JobDispatchEvent extends jdk.jfr.Event {
+    @Label("Node Id")
+    String nodeId;
+
+    @Label("Free Slots")
+    int freeSlots;
+
+    @Label("Free Heavy Weight Slots")
+    int freeHeavyWeightSlots;
+
+    @Label("Claimed Jobs")
+    int claimedJobs;
+}
@@ -0,0 +1,24 @@
+package com.purno.jobman;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.purno.jobman.JobExecution")
+@Label("Job Execution")
+@Category("Job Manager")
+@Description("A single run of a job")
+class JobExecutionEvent extends jdk.jfr.Event {
+    @Label("Job Id")
+    long jobId;
+
+    @Label("Job Name")
+    String jobName;
+
+    @Label("Job Class")
+    Class<?> jobClass;
+
+    @Label("Final State")
+    String state;
+}
@@ -1,37 +1,128 @@
 package com.purno.jobman;
 
+import lombok.Builder;
+import lombok.Getter;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
 
 @Slf4j
 public class JobManager {
+    private static final int DEFAULT_JOB_LIMIT = 1000;
+    private static final int DEFAULT_PROGRESS_UPDATES_PER_SECOND = 1;
+    private static final long SCHEDULE_TICK_MILLIS = 100;
+    private static final int SCHEDULE_WHEEL_SIZE = 512;
+    private static final int MAX_CATCH_UP_FIRINGS = 1000;
+    private static final Duration DEFAULT_LEASE_DURATION = Duration.ofSeconds(30);
+
     private final JobStore jobStore;
     private final Consumer<Job<?>> progressConsumer;
-    private final int heavyWeightJobLimit;
+    private final int jobLimit;
+    private final ResourcePools resourcePools;
+    private final Map<String, Integer> fairShareWeights;
+    private final long progressPublishIntervalNanos;
+    private final RetryPolicy retryPolicy;
+    private final JobMetrics metrics;
+    private final Duration leaseDuration;
+    private final LeaseExpiryPolicy leaseExpiryPolicy;
+    private final RetentionPolicy retentionPolicy;
+    @Getter
+    private final String nodeId = UUID.randomUUID().toString();
 
     private final ScheduledExecutorService jobRunner = Executors.newScheduledThreadPool(1);
+    // Leases are renewed on their own thread, so a slow dispatch or store call on jobRunner cannot let them expire
+    private final ScheduledExecutorService heartbeatRunner = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("job-manager-heartbeat").daemon().factory());
     private final ExecutorService jobExecutor = Executors.newVirtualThreadPerTaskExecutor();
     private final Map<Long, RunningJob> runningJobs = new ConcurrentHashMap<>();
-    private int heavyWeightJobCount = 0;
+    private final AtomicBoolean dispatchRequested = new AtomicBoolean(false);
+    private final AtomicInteger activeJobCount = new AtomicInteger(0);
+    private final AtomicBoolean purging = new AtomicBoolean(false);
+
+    // Serializes releasing dependents so two parents finishing together cannot both release a child. A lock rather
+    // than a monitor, so virtual threads waiting for it do not pin their carrier
+    private final ReentrantLock dependencyLock = new ReentrantLock();
+
+    private ScheduledFuture<?> nextDueTimer;
+    private Instant nextDueTime;
+
+    // Recurring schedules; the wheel is only touched on the jobRunner thread
+    private final Map<String, ScheduleEntry> schedules = new ConcurrentHashMap<>();
+    private HierarchicalTimingWheel<ScheduleEntry> scheduleWheel;
 
     public JobManager(JobStore jobStore,
                       Consumer<Job<?>> progressConsumer,
                       int heavyWeightJobLimit,
                       int schedulerDelayInSeconds) {
+        this(jobStore, progressConsumer, 0, heavyWeightJobLimit, null, null, schedulerDelayInSeconds, 0, null, null, null, null, null);
+    }
+
+    @Builder
+    public JobManager(JobStore jobStore,
+                      Consumer<Job<?>> progressConsumer,
+                      int jobLimit,
+                      int heavyWeightJobLimit,
+                      Map<String, Integer> resourceLimits,
+                      Map<String, Integer> fairShareWeights,
+                      int schedulerDelayInSeconds,
+                      int progressUpdatesPerSecond,
+                      RetryPolicy retryPolicy,
+                      JobMetrics metrics,
+                      Duration leaseDuration,
+                      LeaseExpiryPolicy leaseExpiryPolicy,
+                      RetentionPolicy retentionPolicy) {
         this.jobStore = jobStore == null ? new InMemoryJobStore() : jobStore;
         this.progressConsumer = progressConsumer == null ? this::logProgress : progressConsumer;
-        this.heavyWeightJobLimit = heavyWeightJobLimit > 0
+        this.jobLimit = jobLimit > 0 ? jobLimit : DEFAULT_JOB_LIMIT;
+        Map<String, Integer> poolCapacities = new HashMap<>(resourceLimits == null ? Map.of() : resourceLimits);
+        poolCapacities.putIfAbsent(ResourcePools.HEAVY_WEIGHT, heavyWeightJobLimit > 0
                 ? heavyWeightJobLimit
-                : Runtime.getRuntime().availableProcessors();
+                : Runtime.getRuntime().availableProcessors());
+        this.resourcePools = new ResourcePools(poolCapacities);
+        this.fairShareWeights = fairShareWeights == null ? Map.of() : Map.copyOf(fairShareWeights);
+        this.progressPublishIntervalNanos = TimeUnit.SECONDS.toNanos(1) / (progressUpdatesPerSecond > 0
+                ? progressUpdatesPerSecond
+                : DEFAULT_PROGRESS_UPDATES_PER_SECOND);
+        this.retryPolicy = retryPolicy;
+        this.metrics = metrics == null ? JobMetrics.NOOP : metrics;
+        this.leaseDuration = leaseDuration != null && leaseDuration.isPositive() ? leaseDuration : DEFAULT_LEASE_DURATION;
+        this.leaseExpiryPolicy = leaseExpiryPolicy == null ? LeaseExpiryPolicy.REQUEUE : leaseExpiryPolicy;
+        this.retentionPolicy = retentionPolicy;
         schedulerDelayInSeconds = schedulerDelayInSeconds > 0 ? schedulerDelayInSeconds : 5;
 
+        this.metrics.registerGauge(JobMetrics.JOBS_ACTIVE, activeJobCount::get);
+        this.metrics.registerGauge(JobMetrics.JOBS_RUNNING, runningJobs::size);
+        this.metrics.registerGauge(JobMetrics.JOBS_WAITING, () -> Math.max(0, activeJobCount.get() - runningJobs.size()));
+        this.metrics.registerGauge(JobMetrics.HEAVY_WEIGHT_JOBS_ACTIVE, () -> resourcePools.getInUse(ResourcePools.HEAVY_WEIGHT));
+
+        // Dispatch is event driven (add, completion, next due time); polling is only a safety net
         jobRunner.scheduleWithFixedDelay(this::run, 0, schedulerDelayInSeconds, TimeUnit.SECONDS);
+        // Parents may have finished while no manager was running
+        jobRunner.execute(this::resumeBlockedJobs);
+        // Renewing well before expiry leaves room for a slow heartbeat or two
+        long heartbeatMillis = Math.max(1, this.leaseDuration.toMillis() / 3);
+        heartbeatRunner.scheduleWithFixedDelay(this::heartbeat, heartbeatMillis, heartbeatMillis, TimeUnit.MILLISECONDS);
+        if (retentionPolicy != null && !retentionPolicy.getMaxAge().isEmpty()) {
+            long purgeMillis = retentionPolicy.getPurgeInterval().toMillis();
+            jobRunner.scheduleWithFixedDelay(this::startPurge, purgeMillis, purgeMillis, TimeUnit.MILLISECONDS);
+        }
     }
 
     private void logProgress(Job<?> job) {
@@ -39,62 +130,255 @@ public class JobManager {
     }
 
     private void run() {
+        JobDispatchEvent event = new JobDispatchEvent();
+        event.begin();
+        long tickStart = System.nanoTime();
         try {
-            boolean includeHeavyWeight = heavyWeightJobCount < heavyWeightJobLimit;
-            for (Job<?> job : jobStore.getForRunningNow(includeHeavyWeight)) {
-                if (job.isHeavyWeight()) {
-                    heavyWeightJobCount++;
+            // Only claim as many jobs as there are free slots, the rest of the backlog stays in the store
+            int freeSlots = jobLimit - activeJobCount.get();
+            int freeHeavyWeightSlots = resourcePools.getAvailable(ResourcePools.HEAVY_WEIGHT);
+            // Jobs of exhausted pools stay in the store instead of being claimed and handed back, so they do not
+            // take the slots of the jobs queued behind them
+            List<Job<?>> claimed = jobStore.claim(nodeId, freeSlots, freeHeavyWeightSlots, fairShareWeights, leaseDuration,
+                    resourcePools.getAvailable());
+            event.freeSlots = freeSlots;
+            event.freeHeavyWeightSlots = freeHeavyWeightSlots;
+            event.claimedJobs = claimed.size();
+
+            for (Job<?> job : claimed) {
+                ResourcePools.Permit permit = acquirePermit(job);
+                if (permit == null) {
+                    continue;
                 }
 
-                job.setState(JobState.WAITING);
+                metrics.incrementCounter(JobMetrics.JOBS_DISPATCHED, null);
+                activeJobCount.incrementAndGet();
+
                 job.setMessage("Waiting");
                 saveAndReportProgress(job);
 
-                jobExecutor.execute(() -> execute(job));
+                jobExecutor.execute(() -> execute(job, permit));
             }
+
+            scheduleWakeUp(jobStore.getNextScheduledTime());
         } catch (Exception e) {
             log.error(e.getMessage(), e);
+        } finally {
+            metrics.recordLatency(JobMetrics.DISPATCH_DURATION, null, System.nanoTime() - tickStart);
+            if (event.shouldCommit()) {
+                event.nodeId = nodeId;
+                event.commit();
+            }
+        }
+    }
+
+    // Returns null after handing the job back to the store when its permits are not available
+    private ResourcePools.Permit acquirePermit(Job<?> job) {
+        Map<String, Integer> demands = resourceDemands(job);
+        if (!resourcePools.canEverFit(demands)) {
+            job.setState(JobState.FAILED);
+            job.setMessage("Failed: requires more resources than configured " + demands);
+            job.setEndTime(Instant.now());
+            saveAndReportProgress(job);
+            finished(job);
+            return null;
+        }
+
+        ResourcePools.Permit permit = resourcePools.tryAcquire(demands);
+        if (permit == null) {
+            job.setState(JobState.INIT);
+            job.setOwner(null);
+            jobStore.save(job);
+        }
+        return permit;
+    }
+
+    private static Map<String, Integer> resourceDemands(Job<?> job) {
+        Map<String, Integer> demands = job.getResources() == null ? Map.of() : job.getResources();
+        if (!job.isHeavyWeight()) {
+            return demands;
+        }
+
+        Map<String, Integer> withHeavyWeight = new HashMap<>(demands);
+        withHeavyWeight.merge(ResourcePools.HEAVY_WEIGHT, 1, Math::max);
+        return withHeavyWeight;
+    }
+
+    // Renews the leases of all jobs held by this node in one store call, then recovers the jobs of nodes that stopped renewing
+    private void heartbeat() {
+        try {
+            jobStore.renewLeases(nodeId, leaseDuration);
+
+            JobState targetState = leaseExpiryPolicy == LeaseExpiryPolicy.FAIL ? JobState.FAILED : JobState.INIT;
+            // This node's own jobs are still running here even if a renewal came too late
+            List<Job<?>> reclaimed = jobStore.reclaimExpiredLeases(jobLimit, targetState, nodeId);
+            for (Job<?> job : reclaimed) {
+                metrics.incrementCounter(JobMetrics.JOBS_RECLAIMED, job.getName());
+                if (job.getState().isDone()) {
+                    job.setEndTime(Instant.now());
+                    saveAndReportProgress(job);
+                    finished(job);
+                } else {
+                    reportProgress(job);
+                }
+            }
+
+            if (!reclaimed.isEmpty()) {
+                wakeUp();
+            }
+        } catch (Exception e) {
+            log.error("Error renewing job leases", e);
         }
     }
 
-    private void execute(Job<?> job) {
-        if (runningJobs.containsKey(job.getId())) {
+    // Purging happens off the scheduler thread, one run at a time
+    private void startPurge() {
+        if (purging.compareAndSet(false, true)) {
+            jobExecutor.execute(() -> {
+                try {
+                    purge();
+                } finally {
+                    purging.set(false);
+                }
+            });
+        }
+    }
+
+    private void purge() {
+        retentionPolicy.getMaxAge().forEach((state, maxAge) -> {
+            Instant endedBefore = Instant.now().minus(maxAge);
+            try {
+                long purged = 0;
+                int batch;
+                do {
+                    batch = jobStore.purge(state, endedBefore, retentionPolicy.getBatchSize(), retentionPolicy.isArchive());
+                    purged += batch;
+                } while (batch == retentionPolicy.getBatchSize() && !jobRunner.isShutdown());
+
+                if (purged > 0) {
+                    log.debug("Purged {} {} jobs that ended before {}", purged, state, endedBefore);
+                }
+            } catch (Exception e) {
+                log.error("Error purging {} jobs", state, e);
+            }
+        });
+    }
+
+    private void dispatch() {
+        dispatchRequested.set(false);
+        run();
+    }
+
+    private void wakeUp() {
+        if (!dispatchRequested.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            jobRunner.execute(this::dispatch);
+        } catch (RejectedExecutionException e) {
+            dispatchRequested.set(false);
+        }
+    }
+
+    private synchronized void scheduleWakeUp(Instant dueTime) {
+        if (dueTime == null || jobRunner.isShutdown()) {
             return;
         }
+        if (nextDueTimer != null && !nextDueTimer.isDone() && !dueTime.isBefore(nextDueTime)) {
+            return;
+        }
+        if (nextDueTimer != null) {
+            nextDueTimer.cancel(false);
+        }
 
-        runningJobs.put(job.getId(), new RunningJob(job, Thread.currentThread()));
+        // Round up so the timer never fires before the job is due
+        long delay = Math.max(0, Duration.between(Instant.now(), dueTime).toMillis() + 1);
+        try {
+            nextDueTime = dueTime;
+            nextDueTimer = jobRunner.schedule(this::wakeUp, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            nextDueTimer = null;
+        }
+    }
+
+    private void execute(Job<?> job, ResourcePools.Permit permit) {
+        if (runningJobs.containsKey(job.getId()) || job.getState().isDone() || job.getState() == JobState.PAUSED) {
+            releaseSlot(permit);
+            return;
+        }
+
+        JobContext context = new JobContext(job, this::saveAndReportProgress, jobRunner, progressPublishIntervalNanos, jobStore::getResult);
+        runningJobs.put(job.getId(), new RunningJob(job, Thread.currentThread(), context));
         Instant start = Instant.now();
+        long runStart = System.nanoTime();
+        if (job.getScheduledTime() != null && start.isAfter(job.getScheduledTime())) {
+            metrics.recordLatency(JobMetrics.JOB_START_LAG, job.getName(),
+                    Duration.between(job.getScheduledTime(), start).toNanos());
+        }
+
+        JobExecutionEvent event = new JobExecutionEvent();
+        event.begin();
 
         try {
             if (job.getStartTime() == null) {
                 job.setStartTime(start);
             }
 
+            job.setAttempts(job.getAttempts() + 1);
             job.setState(JobState.RUNNING);
             job.setMessage("Running");
             saveAndReportProgress(job);
 
-            job.run();
+            try {
+                job.run(context);
+            } finally {
+                context.close();
+            }
 
-            if (job.getState() == JobState.RUNNING) {
+            // A job that finished without looking at a pause request has nothing left to resume
+            JobState stoppedAs = context.stoppedAs();
+            if (stoppedAs != null) {
+                job.setState(stoppedAs);
+            } else if (job.getState() == JobState.RUNNING || job.getState() == JobState.PAUSED) {
                 job.setState(JobState.SUCCESSFUL);
                 job.setMessage("Success");
             }
         }  catch (Exception e) {
-            if (job.getState() == JobState.RUNNING) {
-                job.setState(JobState.FAILED);
-                job.setMessage("Failed: "  + e.getMessage());
+            // A pause the job never looked at does not hide its failure, only cancel's own interrupt is not one
+            JobState stoppedAs = context.stoppedAs();
+            if (stoppedAs != null) {
+                job.setState(stoppedAs);
+            } else if (job.getState() != JobState.CANCELED) {
+                handleFailure(job, e);
             }
         } finally {
-            runningJobs.remove(job.getId());
-            if (job.isHeavyWeight()) {
-                heavyWeightJobCount--;
+            releaseSlot(permit);
+
+            metrics.recordLatency(JobMetrics.JOB_RUN_TIME, job.getName(), System.nanoTime() - runStart);
+            if (job.getState().isDone()) {
+                metrics.incrementCounter(JobMetrics.JOBS_COMPLETED, job.getState().name());
+            }
+            if (event.shouldCommit()) {
+                event.jobId = job.getId();
+                event.jobName = job.getName();
+                event.jobClass = job.getClass();
+                event.state = job.getState().name();
+                event.commit();
             }
 
             Instant end = Instant.now();
             if (job.getState().isDone()) {
                 job.setEndTime(end);
             }
+            if (job.getState() == JobState.PAUSED) {
+                // A paused run does not use up an attempt of the retry policy
+                job.setAttempts(job.getAttempts() - 1);
+                job.setOwner(null);
+                job.setMessage("Paused");
+            } else if (job.getState() == JobState.CANCELED) {
+                job.setMessage("Canceled");
+            }
 
             Duration duration = Duration.between(start, end);
             if (job.getDuration() == null) {
@@ -103,7 +387,48 @@ public class JobManager {
                 job.setDuration(job.getDuration().plus(duration));
             }
 
-            saveAndReportProgress(job);
+            try {
+                saveAndReportProgress(job);
+            } finally {
+                // Only forgotten once saved, so resume cannot race with the save of a paused run
+                runningJobs.remove(job.getId());
+            }
+            if (job.getState().isDone()) {
+                finished(job);
+            }
+            wakeUp();
+            if (job.getState() == JobState.INIT) {
+                scheduleWakeUp(job.getScheduledTime());
+            }
+        }
+    }
+
+    // Re-queues the job with backoff while its retry policy allows, then dead-letters it
+    private void handleFailure(Job<?> job, Exception e) {
+        RetryPolicy policy = job.getRetryPolicy() != null ? job.getRetryPolicy() : retryPolicy;
+        if (policy == null) {
+            job.setState(JobState.FAILED);
+            job.setMessage("Failed: "  + e.getMessage());
+            return;
+        }
+
+        int attempts = job.getAttempts();
+        if (policy.canRetry(attempts)) {
+            Duration delay = policy.nextDelay(attempts);
+            job.setState(JobState.INIT);
+            job.setOwner(null);
+            job.setScheduledTime(Instant.now().plus(delay));
+            job.setMessage("Attempt " + attempts + " failed, retrying in " + delay + ": " + e.getMessage());
+            metrics.incrementCounter(JobMetrics.JOBS_RETRIED, job.getName());
+        } else {
+            job.setState(JobState.DEAD_LETTER);
+            job.setMessage("Failed after " + attempts + " attempts: " + e.getMessage());
+        }
+    }
+
+    private void releaseSlot(ResourcePools.Permit permit) {
+        if (permit.release()) {
+            activeJobCount.decrementAndGet();
         }
     }
 
@@ -117,7 +442,201 @@ public class JobManager {
     }
 
     public void add(Job<?> job) {
+        checkResources(job);
+        if (hasDependencies(job)) {
+            checkDependencies(List.of(job));
+            block(job);
+            // Saved first so the edges exist before any parent can finish and look for its dependents
+            jobStore.save(job);
+            reportProgress(job);
+            dependencyLock.lock();
+            try {
+                evaluateDependencies(List.of(job));
+            } finally {
+                dependencyLock.unlock();
+            }
+            return;
+        }
+
         jobStore.save(job);
+        enqueued(job);
+    }
+
+    // Saves the jobs with one bulk store call and wakes the dispatcher once for all of them
+    public void addAll(Collection<? extends Job<?>> jobs) {
+        jobs.forEach(this::checkResources);
+        List<Job<?>> blocked = new ArrayList<>();
+        for (Job<?> job : jobs) {
+            if (hasDependencies(job)) {
+                blocked.add(job);
+            }
+        }
+        checkDependencies(blocked);
+        // Only blocked once every job passed the checks, so a failed call leaves the jobs untouched
+        blocked.forEach(this::block);
+
+        jobStore.saveAll(jobs);
+
+        enqueued(jobs.stream().filter(job -> !hasDependencies(job)).toList());
+        if (!blocked.isEmpty()) {
+            blocked.forEach(this::reportProgress);
+            dependencyLock.lock();
+            try {
+                evaluateDependencies(blocked);
+            } finally {
+                dependencyLock.unlock();
+            }
+        }
+    }
+
+    // Claim skips jobs that do not fit the free permits, so one that can never fit would wait forever
+    private void checkResources(Job<?> job) {
+        Map<String, Integer> demands = resourceDemands(job);
+        if (!resourcePools.canEverFit(demands)) {
+            throw new IllegalArgumentException("Job requires more resources than configured " + demands);
+        }
+    }
+
+    private static boolean hasDependencies(Job<?> job) {
+        return job.getDependsOn() != null && !job.getDependsOn().isEmpty();
+    }
+
+    // Looks up every parent once, however many of the jobs share it
+    private void checkDependencies(Collection<? extends Job<?>> jobs) {
+        Set<Long> parentIds = new HashSet<>();
+        jobs.forEach(job -> parentIds.addAll(job.getDependsOn()));
+        for (long parentId : parentIds) {
+            if (jobStore.get(parentId) == null) {
+                throw new IllegalStateException("Dependency with id " + parentId + " not found");
+            }
+        }
+    }
+
+    private void block(Job<?> job) {
+        job.setState(JobState.BLOCKED);
+        job.setMessage("Waiting for dependencies");
+    }
+
+    private void enqueued(Job<?> job) {
+        if (job.getScheduledTime() != null && job.getScheduledTime().isAfter(Instant.now())) {
+            scheduleWakeUp(job.getScheduledTime());
+        } else {
+            wakeUp();
+        }
+    }
+
+    // Wakes the dispatcher once for the runnable jobs and once for the earliest scheduled one
+    private void enqueued(Collection<? extends Job<?>> jobs) {
+        boolean runnable = false;
+        Instant firstScheduledTime = null;
+        Instant now = Instant.now();
+        for (Job<?> job : jobs) {
+            if (job.getScheduledTime() != null && job.getScheduledTime().isAfter(now)) {
+                if (firstScheduledTime == null || job.getScheduledTime().isBefore(firstScheduledTime)) {
+                    firstScheduledTime = job.getScheduledTime();
+                }
+            } else {
+                runnable = true;
+            }
+        }
+        if (runnable) {
+            wakeUp();
+        }
+        if (firstScheduledTime != null) {
+            scheduleWakeUp(firstScheduledTime);
+        }
+    }
+
+    // Follow-up of a job reaching a final state, wherever that happens: in execute, on cancel, lease expiry or a failed
+    // dependency. A fixed delay schedule only fires again from here, so missing one would stop it for good
+    private void finished(Job<?> job) {
+        releaseDependents(job.getId());
+        rearmFixedDelay(job);
+    }
+
+    // Releases or fails the jobs waiting on a finished job, following failures down the graph
+    private void releaseDependents(long jobId) {
+        // Most jobs have no dependents; they are told apart by an edge probe without taking the lock. A child
+        // added after the probe sees its parent as finished when it is evaluated itself
+        if (!jobStore.hasDependents(jobId)) {
+            return;
+        }
+
+        dependencyLock.lock();
+        try {
+            Deque<Long> finished = new ArrayDeque<>(List.of(jobId));
+            while (!finished.isEmpty()) {
+                for (Job<?> failed : evaluateDependencies(jobStore.getDependents(finished.poll()))) {
+                    finished.add(failed.getId());
+                }
+            }
+        } finally {
+            dependencyLock.unlock();
+        }
+    }
+
+    // Moves blocked jobs to INIT once all their parents succeeded, or fails them. Each parent is looked up once and
+    // the changed jobs are saved together; returns the jobs that failed
+    private List<Job<?>> evaluateDependencies(Collection<? extends Job<?>> jobs) {
+        Map<Long, Job<?>> parents = new HashMap<>();
+        List<Job<?>> changed = new ArrayList<>();
+        List<Job<?>> released = new ArrayList<>();
+        List<Job<?>> failed = new ArrayList<>();
+        Instant now = Instant.now();
+        for (Job<?> job : jobs) {
+            if (job.getState() != JobState.BLOCKED) {
+                continue;
+            }
+
+            boolean pending = false;
+            for (long parentId : job.getDependsOn()) {
+                if (!parents.containsKey(parentId)) {
+                    parents.put(parentId, jobStore.get(parentId));
+                }
+                Job<?> parent = parents.get(parentId);
+                if (parent == null || (parent.getState().isDone() && parent.getState() != JobState.SUCCESSFUL)) {
+                    job.setState(JobState.FAILED);
+                    job.setMessage("Dependency " + parentId + (parent == null ? " was removed" : " ended as " + parent.getState()));
+                    job.setEndTime(now);
+                    failed.add(job);
+                    break;
+                }
+                pending |= parent.getState() != JobState.SUCCESSFUL;
+            }
+
+            if (job.getState() == JobState.FAILED) {
+                changed.add(job);
+            } else if (!pending) {
+                job.setState(JobState.INIT);
+                job.setMessage("Dependencies completed");
+                changed.add(job);
+                released.add(job);
+            }
+        }
+
+        if (!changed.isEmpty()) {
+            jobStore.saveAll(changed);
+            changed.forEach(this::reportProgress);
+            enqueued(released);
+            failed.forEach(this::rearmFixedDelay);
+        }
+        return failed;
+    }
+
+    private void resumeBlockedJobs() {
+        try {
+            List<Job<?>> blocked = jobStore.getByState(JobState.BLOCKED, Integer.MAX_VALUE);
+            List<Job<?>> failed;
+            dependencyLock.lock();
+            try {
+                failed = evaluateDependencies(blocked);
+            } finally {
+                dependencyLock.unlock();
+            }
+            failed.forEach(job -> releaseDependents(job.getId()));
+        } catch (Exception e) {
+            log.error("Error resuming blocked jobs", e);
+        }
     }
 
     private void cancel(long jobId, boolean force) {
@@ -131,19 +650,193 @@ public class JobManager {
 
         job.setState(JobState.CANCELED);
         job.setMessage("Canceling");
+        job.setEndTime(Instant.now());
         jobStore.save(job);
 
         RunningJob runningJob = runningJobs.get(jobId);
         if (runningJob != null) {
             runningJob.job.setState(JobState.CANCELED);
+            runningJob.context.requestStop(JobState.CANCELED);
             runningJob.thread.interrupt();
+        } else {
+            // A running job is finished when it stops
+            finished(job);
         }
     }
 
+    public void schedule(RecurringSchedule schedule) {
+        ScheduleEntry entry = new ScheduleEntry(schedule);
+        if (schedules.putIfAbsent(schedule.getName(), entry) != null) {
+            throw new IllegalStateException("Schedule " + schedule.getName() + " already exists");
+        }
+
+        // Continue from the last firing recorded in the store so downtime is subject to the misfire policy
+        Instant lastFireTime = jobStore.getLastScheduledTime(schedule.getName());
+        Instant firstFireTime = lastFireTime != null
+                ? schedule.nextFireTime(lastFireTime)
+                : schedule.firstFireTime(Instant.now());
+        jobRunner.execute(() -> arm(entry, firstFireTime));
+    }
+
+    public void unschedule(String name) {
+        ScheduleEntry entry = schedules.remove(name);
+        if (entry == null) {
+            throw new IllegalStateException("Schedule " + name + " not found");
+        }
+
+        entry.active = false;
+        jobRunner.execute(() -> {
+            if (entry.timer != null) {
+                entry.timer.cancel();
+            }
+        });
+    }
+
+    private void arm(ScheduleEntry entry, Instant fireTime) {
+        if (!entry.active || fireTime == null) {
+            return;
+        }
+
+        if (scheduleWheel == null) {
+            scheduleWheel = new HierarchicalTimingWheel<>(SCHEDULE_TICK_MILLIS, SCHEDULE_WHEEL_SIZE, System.currentTimeMillis());
+            jobRunner.scheduleAtFixedRate(this::advanceSchedules, SCHEDULE_TICK_MILLIS, SCHEDULE_TICK_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        entry.nextFireTime = fireTime;
+        entry.timer = scheduleWheel.schedule(entry, fireTime.toEpochMilli());
+    }
+
+    private void advanceSchedules() {
+        try {
+            scheduleWheel.advanceTo(System.currentTimeMillis(), this::fire);
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+        }
+    }
+
+    private void fire(ScheduleEntry entry) {
+        if (!entry.active) {
+            return;
+        }
+
+        RecurringSchedule schedule = entry.schedule;
+        Instant now = Instant.now();
+        List<Instant> fireTimes = new ArrayList<>(List.of(entry.nextFireTime));
+
+        // Fixed delay schedules are re-armed when their job completes
+        if (!schedule.isFixedDelay()) {
+            Instant next = schedule.nextFireTime(entry.nextFireTime);
+            while (next != null && !next.isAfter(now)) {
+                if (schedule.getMisfirePolicy() == RecurringSchedule.MisfirePolicy.CATCH_UP && fireTimes.size() < MAX_CATCH_UP_FIRINGS) {
+                    fireTimes.add(next);
+                }
+                next = schedule.nextFireTime(next);
+            }
+            arm(entry, next);
+        }
+
+        // Inserting the jobs happens off the scheduler thread
+        jobExecutor.execute(() -> {
+            for (Instant fireTime : fireTimes) {
+                try {
+                    Job<?> job = schedule.getJobFactory().get();
+                    job.setScheduleName(schedule.getName());
+                    job.setScheduledTime(fireTime);
+                    add(job);
+                } catch (Exception e) {
+                    log.error("Error creating job for schedule {}", schedule.getName(), e);
+                }
+            }
+        });
+    }
+
+    // Counts the delay from the job's end. A pending firing is replaced, so a job finishing twice (e.g. canceled
+    // after it ended) never leaves two timers behind
+    private void rearmFixedDelay(Job<?> job) {
+        ScheduleEntry entry = job.getScheduleName() != null ? schedules.get(job.getScheduleName()) : null;
+        if (entry == null || !entry.schedule.isFixedDelay()) {
+            return;
+        }
+
+        Instant completedAt = job.getEndTime() != null ? job.getEndTime() : Instant.now();
+        try {
+            jobRunner.execute(() -> {
+                if (entry.timer != null) {
+                    entry.timer.cancel();
+                }
+                arm(entry, completedAt.plus(entry.schedule.getFixedDelay()));
+            });
+        } catch (RejectedExecutionException e) {
+            // Stopping, the next start continues from the last firing in the store
+        }
+    }
+
+    // Runs a finished job again from scratch, e.g. after fixing the cause of a dead-lettered failure
+    public void requeue(long jobId) {
+        Job<?> job = jobStore.get(jobId);
+        if (job == null) {
+            throw new IllegalStateException("Job with id " + jobId + " not found");
+        }
+        if (!job.getState().isDone()) {
+            throw new IllegalStateException("Job with id " + jobId + " is still " + job.getState());
+        }
+
+        job.setState(JobState.INIT);
+        job.setOwner(null);
+        job.setAttempts(0);
+        job.setScheduledTime(null);
+        job.setEndTime(null);
+        job.setMessage("Requeued");
+        add(job);
+    }
+
     public void cancel(long jobId) {
         cancel(jobId, false);
     }
 
+    // Takes a queued or running job out of the way until resume, e.g. to make room for urgent work.
+    // A running job keeps its slot until it returns after seeing JobContext.isStopRequested
+    public void pause(long jobId) {
+        Job<?> job = jobStore.get(jobId);
+        if (job == null) {
+            throw new IllegalStateException("Job with id " + jobId + " not found");
+        }
+        if (job.getState() != JobState.INIT && job.getState() != JobState.WAITING && job.getState() != JobState.RUNNING) {
+            throw new IllegalStateException("Job with id " + jobId + " cannot be paused while " + job.getState());
+        }
+
+        RunningJob runningJob = runningJobs.get(jobId);
+        job.setState(JobState.PAUSED);
+        job.setMessage(runningJob != null ? "Pausing" : "Paused");
+        jobStore.save(job);
+
+        if (runningJob != null) {
+            runningJob.job.setState(JobState.PAUSED);
+            runningJob.context.requestStop(JobState.PAUSED);
+        } else {
+            reportProgress(job);
+        }
+    }
+
+    // Queues a paused job again; it runs from its last checkpoint once a slot is free
+    public void resume(long jobId) {
+        Job<?> job = jobStore.get(jobId);
+        if (job == null) {
+            throw new IllegalStateException("Job with id " + jobId + " not found");
+        }
+        if (job.getState() != JobState.PAUSED) {
+            throw new IllegalStateException("Job with id " + jobId + " is not paused but " + job.getState());
+        }
+        if (runningJobs.containsKey(jobId)) {
+            throw new IllegalStateException("Job with id " + jobId + " is still stopping");
+        }
+
+        job.setState(JobState.INIT);
+        job.setOwner(null);
+        job.setMessage("Resumed");
+        saveAndReportProgress(job);
+        enqueued(job);
+    }
+
     public void remove(long jobId) {
         cancel(jobId, true);
         jobStore.delete(jobId);
@@ -152,11 +845,38 @@ public class JobManager {
     @SneakyThrows
     public void stop() {
         jobRunner.shutdown();
+        heartbeatRunner.shutdown();
         jobExecutor.shutdown();
 
         log.info("JobRunner terminated: {}", jobRunner.awaitTermination(1, TimeUnit.MINUTES));
+        log.info("Heartbeat terminated: {}", heartbeatRunner.awaitTermination(1, TimeUnit.MINUTES));
         log.info("JobExecutor terminated: {}", jobExecutor.awaitTermination(1, TimeUnit.MINUTES));
+
+        jobStore.flush();
+
+        if (progressConsumer instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+
+    // What happens to a job whose owner stopped renewing its lease, e.g. because the node crashed
+    public enum LeaseExpiryPolicy {
+        // Run the job again on any node
+        REQUEUE,
+        // Mark the job FAILED, for jobs that must not run twice
+        FAIL
     }
 
-    private record RunningJob(Job<?> job, Thread thread) {}
+    private record RunningJob(Job<?> job, Thread thread, JobContext context) {}
+
+    private static class ScheduleEntry {
+        private final RecurringSchedule schedule;
+        private volatile boolean active = true;
+        private Instant nextFireTime;
+        private HierarchicalTimingWheel.Timer<ScheduleEntry> timer;
+
+        private ScheduleEntry(RecurringSchedule schedule) {
+            this.schedule = schedule;
+        }
+    }
 }
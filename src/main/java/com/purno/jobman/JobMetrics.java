@@ -0,0 +1,29 @@
+package com.purno.jobman;
+
+import java.util.function.Supplier;
+
+public interface JobMetrics {
+    JobMetrics NOOP = new JobMetrics() {};
+
+    String JOBS_ACTIVE = "jobman.jobs.active";
+    String JOBS_WAITING = "jobman.jobs.waiting";
+    String JOBS_RUNNING = "jobman.jobs.running";
+    String HEAVY_WEIGHT_JOBS_ACTIVE = "jobman.jobs.heavyweight.active";
+    String JOBS_DISPATCHED = "jobman.jobs.dispatched";
+    String JOBS_COMPLETED = "jobman.jobs.completed";
+    String JOBS_RETRIED = "jobman.jobs.retried";
+    String JOBS_RECLAIMED = "jobman.jobs.reclaimed";
+    String DISPATCH_DURATION = "jobman.dispatch.duration";
+    String JOB_START_LAG = "jobman.job.start.lag";
+    String JOB_RUN_TIME = "jobman.job.run.time";
+    String STORE_LATENCY = "jobman.store.latency";
+
+    default void incrementCounter(String name, String tag) {
+    }
+
+    default void registerGauge(String name, Supplier<Number> value) {
+    }
+
+    default void recordLatency(String name, String tag, long nanos) {
+    }
+}
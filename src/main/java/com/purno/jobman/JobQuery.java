@@ -0,0 +1,68 @@
+package com.purno.jobman;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.time.Instant;
+import java.util.EnumSet;
+import java.util.Set;
+
+// Filters for JobStore.query and count. Unset filters match every job; time ranges include their "from" bound and
+// exclude their "to" bound. Results come in id order after afterId, at most limit of them, so the last id of a page
+// is the afterId of the next one
+@Getter
+public class JobQuery {
+    private final Set<JobState> states;
+    private final String name;
+    private final Boolean heavyWeight;
+    private final Instant scheduledFrom;
+    private final Instant scheduledTo;
+    private final Instant startedFrom;
+    private final Instant startedTo;
+    private final Instant endedFrom;
+    private final Instant endedTo;
+    private final long afterId;
+    private final int limit;
+
+    @Builder
+    public JobQuery(Set<JobState> states, String name, Boolean heavyWeight,
+                    Instant scheduledFrom, Instant scheduledTo,
+                    Instant startedFrom, Instant startedTo,
+                    Instant endedFrom, Instant endedTo,
+                    long afterId, int limit) {
+        this.states = states == null || states.isEmpty() ? Set.of() : Set.copyOf(EnumSet.copyOf(states));
+        this.name = name;
+        this.heavyWeight = heavyWeight;
+        this.scheduledFrom = scheduledFrom;
+        this.scheduledTo = scheduledTo;
+        this.startedFrom = startedFrom;
+        this.startedTo = startedTo;
+        this.endedFrom = endedFrom;
+        this.endedTo = endedTo;
+        this.afterId = Math.max(afterId, 0);
+        this.limit = limit > 0 ? limit : JobStore.DEFAULT_PAGE_SIZE;
+    }
+
+    // The next page after the given last id, with the same filters
+    public JobQuery after(long lastId) {
+        return new JobQuery(states, name, heavyWeight, scheduledFrom, scheduledTo, startedFrom, startedTo,
+                endedFrom, endedTo, lastId, limit);
+    }
+
+    boolean matches(Job<?> job) {
+        return job.getId() > afterId
+                && (states.isEmpty() || states.contains(job.getState()))
+                && (name == null || name.equals(job.getName()))
+                && (heavyWeight == null || heavyWeight == job.isHeavyWeight())
+                && inRange(job.getScheduledTime(), scheduledFrom, scheduledTo)
+                && inRange(job.getStartTime(), startedFrom, startedTo)
+                && inRange(job.getEndTime(), endedFrom, endedTo);
+    }
+
+    private static boolean inRange(Instant time, Instant from, Instant to) {
+        if (from == null && to == null) {
+            return true;
+        }
+        return time != null && (from == null || !time.isBefore(from)) && (to == null || time.isBefore(to));
+    }
+}
@@ -2,14 +2,18 @@ package com.purno.jobman;
 
 public enum JobState {
     INIT,
+    // Waiting for the jobs it depends on to succeed
+    BLOCKED,
     WAITING,
     RUNNING,
     PAUSED,
     SUCCESSFUL,
     FAILED,
-    CANCELED;
+    CANCELED,
+    // Failed on every attempt its retry policy allowed
+    DEAD_LETTER;
 
     public boolean isDone() {
-        return this == SUCCESSFUL || this == FAILED || this == CANCELED;
+        return this == SUCCESSFUL || this == FAILED || this == CANCELED || this == DEAD_LETTER;
     }
 }
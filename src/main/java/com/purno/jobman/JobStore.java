@@ -1,17 +1,118 @@
 package com.purno.jobman;
 
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 public interface JobStore {
+    int DEFAULT_PAGE_SIZE = 500;
+
     void save(Job<?> job);
 
+    // Saves many jobs at once; stores insert new jobs in batches instead of one round-trip each
+    default void saveAll(Collection<? extends Job<?>> jobs) {
+        jobs.forEach(this::save);
+    }
+
     Job<?> get(long jobId);
 
     void delete(long jobId);
 
     List<Job<?>> getAll();
 
-    List<Job<?>> getForRunningNow(boolean includeHeavyWeight);
+    List<Job<?>> getPage(long afterId, int limit);
+
+    default Stream<Job<?>> stream() {
+        return stream(DEFAULT_PAGE_SIZE);
+    }
+
+    // Lazily walks all jobs in id order, holding at most one page in memory
+    default Stream<Job<?>> stream(int pageSize) {
+        return Stream.iterate(getPage(0, pageSize),
+                        page -> !page.isEmpty(),
+                        page -> page.size() < pageSize ? List.of() : getPage(page.getLast().getId(), pageSize))
+                .flatMap(List::stream);
+    }
+
+    // Results of finished jobs are stored apart from the job, so jobs loaded by the other methods may come without them.
+    // Null when the job has no stored result
+    <R> R getResult(long jobId);
+
+    // The stored result in its encoded form (JSON, or Smile for binary codecs) without decoding it; close when done
+    InputStream openResult(long jobId);
+
+    // Jobs that list the given job in their dependsOn
+    List<Job<?>> getDependents(long jobId);
+
+    // Cheaper than getDependents when only the existence of an edge matters, e.g. for every finished job
+    default boolean hasDependents(long jobId) {
+        return !getDependents(jobId).isEmpty();
+    }
+
+    // Oldest first, e.g. to inspect dead-lettered jobs
+    List<Job<?>> getByState(JobState state, int limit);
+
+    // One page of the jobs matching the query, in id order
+    List<Job<?>> query(JobQuery query);
+
+    // Number of jobs matching the query's filters, ignoring afterId and limit
+    long count(JobQuery query);
+
+    List<Job<?>> getForRunningNow(int limit, int heavyWeightLimit);
+
+    default List<Job<?>> getForRunningNow(boolean includeHeavyWeight) {
+        return getForRunningNow(Integer.MAX_VALUE, includeHeavyWeight ? Integer.MAX_VALUE : 0);
+    }
+
+    // Runnable jobs are handed out by priority, then round-robin across job names weighted by groupWeights
+    // (names without a weight count as 1), then oldest first. Claimed jobs hold a lease for leaseDuration
+    // (none when null) that the owner keeps alive with renewLeases. availableResources holds the free permits per
+    // resource pool: jobs demanding more than a pool has free are skipped and stay INIT, unlisted pools are unlimited
+    List<Job<?>> claim(String nodeId, int limit, int heavyWeightLimit, Map<String, Integer> groupWeights, Duration leaseDuration,
+                       Map<String, Integer> availableResources);
+
+    default List<Job<?>> claim(String nodeId, int limit, int heavyWeightLimit, Map<String, Integer> groupWeights, Duration leaseDuration) {
+        return claim(nodeId, limit, heavyWeightLimit, groupWeights, leaseDuration, Map.of());
+    }
+
+    default List<Job<?>> claim(String nodeId, int limit, int heavyWeightLimit, Map<String, Integer> groupWeights) {
+        return claim(nodeId, limit, heavyWeightLimit, groupWeights, null);
+    }
+
+    default List<Job<?>> claim(String nodeId, int limit, int heavyWeightLimit) {
+        return claim(nodeId, limit, heavyWeightLimit, Map.of());
+    }
+
+    default List<Job<?>> claim(String nodeId, int maxJobs, boolean includeHeavyWeight) {
+        return claim(nodeId, maxJobs, includeHeavyWeight ? maxJobs : 0);
+    }
+
+    // Extends the leases of all WAITING and RUNNING jobs owned by the node at once, returns how many were renewed
+    int renewLeases(String nodeId, Duration leaseDuration);
+
+    default List<Job<?>> reclaimExpiredLeases(int limit, JobState targetState) {
+        return reclaimExpiredLeases(limit, targetState, null);
+    }
+
+    // Moves WAITING and RUNNING jobs whose lease has expired to targetState (INIT or FAILED) without an owner.
+    // Jobs owned by excludedOwner are left alone, so a node never reclaims the jobs it is still running
+    List<Job<?>> reclaimExpiredLeases(int limit, JobState targetState, String excludedOwner);
+
+    // Deletes up to limit jobs in a finished state that ended before endedBefore, copying them to the
+    // store's archive first when archive is set. Returns how many were removed
+    int purge(JobState state, Instant endedBefore, int limit, boolean archive);
+
+    Instant getNextScheduledTime();
+
+    // Latest scheduledTime of the jobs created by a recurring schedule, used to detect missed firings
+    Instant getLastScheduledTime(String scheduleName);
 
     long count();
+
+    default void flush() {
+    }
 }
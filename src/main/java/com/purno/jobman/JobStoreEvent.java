@@ -0,0 +1,18 @@
+package com.purno.jobman;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.purno.jobman.JobStore")
+@Label("Job Store Call")
+@Category("Job Manager")
+@Description("A call into a JobStore implementation")
+class JobStoreEvent extends jdk.jfr.Event {
+    @Label("Store Class")
+    Class<?> storeClass;
+
+    @Label("Operation")
+    String operation;
+}
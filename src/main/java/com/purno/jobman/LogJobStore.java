@@ -0,0 +1,440 @@
+package com.purno.jobman;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.Builder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+// Durable single-node store: jobs are served from memory like InMemoryJobStore, and every change is appended to a
+// memory-mapped write-ahead log in the given directory. Concurrent writers share one force of the log (group commit).
+// Once enough log has accumulated, a snapshot of all jobs replaces the older log segments, so startup only replays
+// the latest snapshot and the segments written after it
+@Slf4j
+public class LogJobStore extends InMemoryJobStore implements AutoCloseable {
+    private static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final long DEFAULT_SNAPSHOT_THRESHOLD = 256L * 1024 * 1024;
+    private static final Pattern SEGMENT_FILE = Pattern.compile("wal-(\\d+)\\.log");
+    private static final Pattern SNAPSHOT_FILE = Pattern.compile("snapshot-(\\d+)\\.dat");
+    // Record length and CRC32 of the record body
+    private static final int FRAME_HEADER = 8;
+    private static final byte SAVE = 1;
+    private static final byte DELETE = 2;
+    private static final byte LAST_ID = 3;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final long snapshotThreshold;
+    private final boolean syncWrites;
+    // Save records carry the result on its own, so the payload leaves it out
+    private final JobCodec codec = new JacksonJobCodec(false, mapper -> mapper.addMixIn(Job.class, ResultMixin.class));
+    private final ExecutorService snapshotter = Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().name("job-log-snapshot").daemon().factory());
+
+    // Appends and the matching in-memory changes happen under writeLock so the log has the same order as memory
+    private final Object writeLock = new Object();
+    private final Object syncLock = new Object();
+    private volatile Segment segment;
+    private long nextSegment;
+    private volatile long appended;
+    private volatile long durable;
+    private long bytesSinceSnapshot;
+    private boolean snapshotting = false;
+    private boolean closed = false;
+
+    public LogJobStore(Path directory) {
+        this(directory, 0, 0, null, null);
+    }
+
+    @Builder
+    public LogJobStore(Path directory, int segmentSize, long snapshotThreshold, Boolean syncWrites, Path archiveFile) {
+        super(archiveFile);
+        this.directory = directory;
+        this.segmentSize = segmentSize > 0 ? segmentSize : DEFAULT_SEGMENT_SIZE;
+        this.snapshotThreshold = snapshotThreshold > 0 ? snapshotThreshold : DEFAULT_SNAPSHOT_THRESHOLD;
+        // Without syncing, changes survive a crash of the process but not of the machine
+        this.syncWrites = syncWrites == null || syncWrites;
+
+        try {
+            recover();
+        } catch (IOException e) {
+            throw new RuntimeException("Error recovering jobs from " + directory, e);
+        }
+    }
+
+    @Override
+    public void save(Job<?> job) {
+        long position;
+        synchronized (writeLock) {
+            checkOpen();
+            byte[] result = encodeResult(job);
+            super.save(job);
+            position = append(saveRecord(job, result));
+        }
+        sync(position);
+    }
+
+    // All records are appended first and then synced together
+    @Override
+    public void saveAll(Collection<? extends Job<?>> jobs) {
+        long position = 0;
+        synchronized (writeLock) {
+            checkOpen();
+            assignIds(jobs);
+            for (Job<?> job : jobs) {
+                byte[] result = encodeResult(job);
+                super.save(job);
+                position = append(saveRecord(job, result));
+            }
+        }
+        sync(position);
+    }
+
+    @Override
+    public void delete(long jobId) {
+        long position;
+        synchronized (writeLock) {
+            checkOpen();
+            super.delete(jobId);
+            position = append(deleteRecord(jobId));
+        }
+        sync(position);
+    }
+
+    // Claims are not synced: a claim lost in a crash only means the job is claimed again after the restart
+    @Override
+    public List<Job<?>> claim(String nodeId, int limit, int heavyWeightLimit, Map<String, Integer> groupWeights, Duration leaseDuration,
+                              Map<String, Integer> availableResources) {
+        synchronized (writeLock) {
+            checkOpen();
+            List<Job<?>> claimed = super.claim(nodeId, limit, heavyWeightLimit, groupWeights, leaseDuration, availableResources);
+            for (Job<?> job : claimed) {
+                append(saveRecord(job, null));
+            }
+            return claimed;
+        }
+    }
+
+    @Override
+    public List<Job<?>> reclaimExpiredLeases(int limit, JobState targetState, String excludedOwner) {
+        long position;
+        List<Job<?>> reclaimed;
+        synchronized (writeLock) {
+            checkOpen();
+            reclaimed = super.reclaimExpiredLeases(limit, targetState, excludedOwner);
+            position = appended;
+            for (Job<?> job : reclaimed) {
+                position = append(saveRecord(job, null));
+            }
+        }
+        sync(position);
+        return reclaimed;
+    }
+
+    @Override
+    public void flush() {
+        sync(appended);
+    }
+
+    @Override
+    public void close() {
+        synchronized (writeLock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+
+        snapshotter.shutdown();
+        try {
+            if (!snapshotter.awaitTermination(1, TimeUnit.MINUTES)) {
+                log.warn("Snapshot of {} did not finish in time", directory);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (writeLock) {
+            segment.buffer.force();
+            // A final snapshot makes the next start a plain snapshot load
+            if (bytesSinceSnapshot > 0) {
+                writeSnapshot(roll(0));
+            }
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("LogJobStore for " + directory + " is closed");
+        }
+    }
+
+    private byte[] encodeResult(Job<?> job) {
+        if (job.getResult() == null || job.getState() == null || !job.getState().isDone()) {
+            return null;
+        }
+
+        try {
+            return codec.encodeResult(job);
+        } catch (IOException e) {
+            throw new RuntimeException("Error encoding result of job " + job.getId(), e);
+        }
+    }
+
+    private byte[] saveRecord(Job<?> job, byte[] result) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            byte[] payload = codec.encode(job);
+            out.writeByte(SAVE);
+            out.writeLong(job.getId());
+            out.writeUTF(job.getClass().getName());
+            out.writeInt(payload.length);
+            out.write(payload);
+            out.writeInt(result != null ? result.length : -1);
+            if (result != null) {
+                out.write(result);
+            }
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException("Error encoding job " + job.getId(), e);
+        }
+    }
+
+    private static byte[] deleteRecord(long jobId) {
+        return ByteBuffer.allocate(9).put(DELETE).putLong(jobId).array();
+    }
+
+    private static byte[] lastIdRecord(long lastId) {
+        return ByteBuffer.allocate(9).put(LAST_ID).putLong(lastId).array();
+    }
+
+    // Returns the log position just after the record, to be passed to sync
+    private long append(byte[] record) {
+        int frameLength = FRAME_HEADER + record.length;
+        if (segment.buffer.remaining() < frameLength) {
+            roll(frameLength);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        segment.buffer.putInt(record.length).putInt((int) crc.getValue()).put(record);
+        appended += frameLength;
+        bytesSinceSnapshot += frameLength;
+
+        if (bytesSinceSnapshot >= snapshotThreshold && !snapshotting) {
+            snapshotting = true;
+            long fromSegment = roll(0);
+            bytesSinceSnapshot = 0;
+            snapshotter.execute(() -> {
+                try {
+                    writeSnapshot(fromSegment);
+                } finally {
+                    synchronized (writeLock) {
+                        snapshotting = false;
+                    }
+                }
+            });
+        }
+        return appended;
+    }
+
+    // Group commit: whoever gets the lock forces everything appended so far, later waiters find their record covered
+    private void sync(long position) {
+        if (!syncWrites || durable >= position) {
+            return;
+        }
+
+        synchronized (syncLock) {
+            if (durable >= position) {
+                return;
+            }
+            long target = appended;
+            segment.buffer.force();
+            durable = target;
+        }
+    }
+
+    // Starts a new segment, big enough for at least one record of minSize; returns its sequence number
+    private long roll(int minSize) {
+        if (segment != null) {
+            segment.buffer.force();
+        }
+
+        long seq = nextSegment++;
+        Path path = directory.resolve("wal-" + seq + ".log");
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            segment = new Segment(seq, channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(segmentSize, minSize + FRAME_HEADER)));
+        } catch (IOException e) {
+            throw new RuntimeException("Error creating log segment " + path, e);
+        }
+        return seq;
+    }
+
+    // Jobs keep changing while the snapshot is written; that is fine because every change after the roll is also in
+    // the segments from fromSegment on, which are replayed over the snapshot
+    private void writeSnapshot(long fromSegment) {
+        Path tmp = directory.resolve("snapshot-" + fromSegment + ".tmp");
+        try {
+            try (FileOutputStream file = new FileOutputStream(tmp.toFile());
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+                writeFrame(out, lastIdRecord(getLastId()));
+                for (Job<?> job : stream().toList()) {
+                    writeFrame(out, saveRecord(job, encodeResult(job)));
+                }
+                out.writeInt(0);
+                out.flush();
+                file.getChannel().force(true);
+            }
+            Files.move(tmp, directory.resolve("snapshot-" + fromSegment + ".dat"), StandardCopyOption.ATOMIC_MOVE);
+
+            for (Map.Entry<Long, Path> older : listFiles(SEGMENT_FILE).headMap(fromSegment).entrySet()) {
+                Files.deleteIfExists(older.getValue());
+            }
+            for (Map.Entry<Long, Path> older : listFiles(SNAPSHOT_FILE).headMap(fromSegment).entrySet()) {
+                Files.deleteIfExists(older.getValue());
+            }
+        } catch (IOException e) {
+            log.error("Error writing snapshot of {}", directory, e);
+        }
+    }
+
+    private static void writeFrame(DataOutputStream out, byte[] record) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        out.writeInt(record.length);
+        out.writeInt((int) crc.getValue());
+        out.write(record);
+    }
+
+    private void recover() throws IOException {
+        Files.createDirectories(directory);
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path tmp : files.filter(path -> path.getFileName().toString().endsWith(".tmp")).toList()) {
+                Files.delete(tmp);
+            }
+        }
+
+        TreeMap<Long, Path> snapshots = listFiles(SNAPSHOT_FILE);
+        TreeMap<Long, Path> segments = listFiles(SEGMENT_FILE);
+        long fromSegment = 0;
+        if (!snapshots.isEmpty()) {
+            fromSegment = snapshots.lastKey();
+            replay(snapshots.lastEntry().getValue());
+        }
+        long replayed = 0;
+        for (Path path : segments.tailMap(fromSegment).values()) {
+            replayed += replay(path);
+        }
+
+        // Whoever held these jobs before the restart is gone
+        for (Job<?> job : stream().toList()) {
+            if (job.getState() == JobState.WAITING || job.getState() == JobState.RUNNING) {
+                expireLease(job);
+            }
+        }
+
+        long lastSeq = Math.max(fromSegment, segments.isEmpty() ? 0 : segments.lastKey());
+        nextSegment = lastSeq + 1;
+        roll(0);
+        // The replayed log counts towards the next snapshot
+        bytesSinceSnapshot = replayed;
+    }
+
+    // Applies records up to the end marker; a torn or corrupt record ends the file, it was never acknowledged.
+    // Returns the number of bytes replayed
+    private long replay(Path path) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        while (buffer.remaining() >= FRAME_HEADER) {
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length <= 0 || length > buffer.remaining()) {
+                break;
+            }
+
+            byte[] record = new byte[length];
+            buffer.get(record);
+            CRC32 crc = new CRC32();
+            crc.update(record);
+            if ((int) crc.getValue() != checksum) {
+                log.warn("Ignoring corrupt record at the end of {}", path);
+                break;
+            }
+            apply(record);
+        }
+        return buffer.position();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void apply(byte[] record) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        byte type = in.readByte();
+        long jobId = in.readLong();
+        if (type == DELETE) {
+            super.delete(jobId);
+            reserveIds(jobId);
+            return;
+        }
+        if (type == LAST_ID) {
+            reserveIds(jobId);
+            return;
+        }
+
+        String implementationClass = in.readUTF();
+        Job<?> job = codec.decode(implementationClass, in.readNBytes(in.readInt()));
+        job.setId(jobId);
+        int resultLength = in.readInt();
+        if (resultLength >= 0) {
+            ((Job<Object>) job).setResult(codec.decodeResult(implementationClass, in.readNBytes(resultLength)));
+        }
+        super.save(job);
+    }
+
+    private TreeMap<Long, Path> listFiles(Pattern pattern) throws IOException {
+        TreeMap<Long, Path> files = new TreeMap<>();
+        try (Stream<Path> paths = Files.list(directory)) {
+            for (Path path : paths.toList()) {
+                Matcher matcher = pattern.matcher(path.getFileName().toString());
+                if (matcher.matches()) {
+                    files.put(Long.parseLong(matcher.group(1)), path);
+                }
+            }
+        }
+        return files;
+    }
+
+    private record Segment(long seq, MappedByteBuffer buffer) {}
+
+    // Records written before the result was left out still carry it in the payload, so it is still read from there
+    @JsonIgnoreProperties(value = "result", allowSetters = true)
+    private abstract static class ResultMixin {}
+}
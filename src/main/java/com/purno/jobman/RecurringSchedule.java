@@ -0,0 +1,81 @@
+package com.purno.jobman;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.function.Supplier;
+
+// A named recurring schedule. Every firing adds a fresh job from jobFactory whose scheduleName links it back here.
+@Getter
+public class RecurringSchedule {
+    public enum MisfirePolicy {
+        // Run every firing that was missed, e.g. while no JobManager was running
+        CATCH_UP,
+        // Run once for any number of missed firings, then continue with the next one that is due
+        SKIP
+    }
+
+    private final String name;
+    private final Supplier<? extends Job<?>> jobFactory;
+    private final Duration fixedRate;
+    private final Duration fixedDelay;
+    private final CronExpression cron;
+    private final ZoneId zone;
+    private final Instant startTime;
+    private final MisfirePolicy misfirePolicy;
+
+    @Builder
+    public RecurringSchedule(String name,
+                             Supplier<? extends Job<?>> jobFactory,
+                             Duration fixedRate,
+                             Duration fixedDelay,
+                             String cron,
+                             ZoneId zone,
+                             Instant startTime,
+                             MisfirePolicy misfirePolicy) {
+        if (name == null || jobFactory == null) {
+            throw new IllegalArgumentException("A recurring schedule needs a name and a job factory");
+        }
+        if ((fixedRate != null ? 1 : 0) + (fixedDelay != null ? 1 : 0) + (cron != null ? 1 : 0) != 1) {
+            throw new IllegalArgumentException("Schedule " + name + " needs exactly one of fixedRate, fixedDelay or cron");
+        }
+        if ((fixedRate != null && !fixedRate.isPositive()) || (fixedDelay != null && !fixedDelay.isPositive())) {
+            throw new IllegalArgumentException("Schedule " + name + " needs a positive period");
+        }
+
+        this.name = name;
+        this.jobFactory = jobFactory;
+        this.fixedRate = fixedRate;
+        this.fixedDelay = fixedDelay;
+        this.cron = cron != null ? new CronExpression(cron) : null;
+        this.zone = zone != null ? zone : ZoneId.systemDefault();
+        this.startTime = startTime;
+        this.misfirePolicy = misfirePolicy != null ? misfirePolicy : MisfirePolicy.SKIP;
+    }
+
+    public boolean isFixedDelay() {
+        return fixedDelay != null;
+    }
+
+    // The first firing when nothing ran before
+    Instant firstFireTime(Instant now) {
+        Instant start = startTime != null ? startTime : now;
+        if (cron != null) {
+            return nextFireTime(start.minusSeconds(1));
+        }
+        return start;
+    }
+
+    // The firing after the given one; fixed delay schedules count from the completion of the previous job instead
+    Instant nextFireTime(Instant previous) {
+        if (cron != null) {
+            ZonedDateTime next = cron.next(previous.atZone(zone));
+            return next != null ? next.toInstant() : null;
+        }
+        return previous.plus(fixedRate != null ? fixedRate : fixedDelay);
+    }
+}
@@ -0,0 +1,117 @@
+package com.purno.jobman;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Named, lock-free permit pools; pools that are not configured place no limit on a job
+public class ResourcePools {
+    public static final String HEAVY_WEIGHT = "heavyWeight";
+
+    private final Map<String, Integer> capacities;
+    private final Map<String, AtomicInteger> available = new TreeMap<>();
+
+    public ResourcePools(Map<String, Integer> capacities) {
+        this.capacities = Map.copyOf(capacities);
+        capacities.forEach((pool, capacity) -> {
+            if (capacity < 0) {
+                throw new IllegalArgumentException("Capacity of pool " + pool + " must not be negative");
+            }
+            available.put(pool, new AtomicInteger(capacity));
+        });
+    }
+
+    public int getCapacity(String pool) {
+        return capacities.getOrDefault(pool, Integer.MAX_VALUE);
+    }
+
+    public int getAvailable(String pool) {
+        AtomicInteger permits = available.get(pool);
+        return permits != null ? permits.get() : Integer.MAX_VALUE;
+    }
+
+    public int getInUse(String pool) {
+        AtomicInteger permits = available.get(pool);
+        return permits != null ? capacities.get(pool) - permits.get() : 0;
+    }
+
+    // Free permits of every pool, for JobStore.claim to skip jobs that would not fit
+    public Map<String, Integer> getAvailable() {
+        Map<String, Integer> free = new HashMap<>();
+        available.forEach((pool, permits) -> free.put(pool, permits.get()));
+        return free;
+    }
+
+    // Takes the demands from the free permits when all of them fit; pools missing from free are unlimited
+    static boolean reserve(Map<String, Integer> free, Map<String, Integer> demands) {
+        if (demands == null || demands.isEmpty() || free.isEmpty()) {
+            return true;
+        }
+        for (Map.Entry<String, Integer> demand : demands.entrySet()) {
+            if (demand.getValue() > free.getOrDefault(demand.getKey(), Integer.MAX_VALUE)) {
+                return false;
+            }
+        }
+        demands.forEach((pool, weight) -> free.computeIfPresent(pool, (p, permits) -> permits - Math.max(weight, 0)));
+        return true;
+    }
+
+    // False when the demand exceeds a pool's capacity, i.e. it can never be acquired
+    public boolean canEverFit(Map<String, Integer> demands) {
+        return demands.entrySet().stream().allMatch(d -> d.getValue() <= getCapacity(d.getKey()));
+    }
+
+    // All or nothing: returns null and keeps no permits when any pool is short
+    public Permit tryAcquire(Map<String, Integer> demands) {
+        // Acquire in pool name order so concurrent callers back off the same way
+        Map<String, Integer> acquired = new TreeMap<>();
+        for (Map.Entry<String, Integer> demand : new TreeMap<>(demands).entrySet()) {
+            AtomicInteger permits = available.get(demand.getKey());
+            int weight = demand.getValue();
+            if (permits == null || weight <= 0) {
+                continue;
+            }
+
+            if (!tryAcquire(permits, weight)) {
+                acquired.forEach((pool, w) -> available.get(pool).addAndGet(w));
+                return null;
+            }
+            acquired.put(demand.getKey(), weight);
+        }
+
+        return new Permit(acquired);
+    }
+
+    private static boolean tryAcquire(AtomicInteger permits, int weight) {
+        while (true) {
+            int current = permits.get();
+            if (current < weight) {
+                return false;
+            }
+            if (permits.compareAndSet(current, current - weight)) {
+                return true;
+            }
+        }
+    }
+
+    public final class Permit {
+        private final Map<String, Integer> acquired;
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        private Permit(Map<String, Integer> acquired) {
+            this.acquired = acquired;
+        }
+
+        // Returns true only for the call that actually gave the permits back
+        public boolean release() {
+            if (!released.compareAndSet(false, true)) {
+                return false;
+            }
+
+            acquired.forEach((pool, weight) -> available.get(pool).addAndGet(weight));
+            return true;
+        }
+    }
+}
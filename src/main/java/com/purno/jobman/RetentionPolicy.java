@@ -0,0 +1,33 @@
+package com.purno.jobman;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.time.Duration;
+import java.util.Map;
+
+// Purges finished jobs once their end time is older than the max age of their state; states without one are kept.
+// Jobs are removed in batches of batchSize, each in its own short transaction, optionally archived first
+@Getter
+public class RetentionPolicy {
+    private static final int DEFAULT_BATCH_SIZE = 500;
+    private static final Duration DEFAULT_PURGE_INTERVAL = Duration.ofMinutes(1);
+
+    private final Map<JobState, Duration> maxAge;
+    private final int batchSize;
+    private final Duration purgeInterval;
+    private final boolean archive;
+
+    @Builder
+    public RetentionPolicy(Map<JobState, Duration> maxAge, int batchSize, Duration purgeInterval, boolean archive) {
+        this.maxAge = maxAge == null ? Map.of() : Map.copyOf(maxAge);
+        this.maxAge.keySet().forEach(state -> {
+            if (!state.isDone()) {
+                throw new IllegalArgumentException("Only finished jobs can be purged, not " + state);
+            }
+        });
+        this.batchSize = batchSize > 0 ? batchSize : DEFAULT_BATCH_SIZE;
+        this.purgeInterval = purgeInterval != null && purgeInterval.isPositive() ? purgeInterval : DEFAULT_PURGE_INTERVAL;
+        this.archive = archive;
+    }
+}
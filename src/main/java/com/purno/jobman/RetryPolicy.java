@@ -0,0 +1,42 @@
+package com.purno.jobman;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Exponential backoff with jitter: the n-th retry waits initialDelay * multiplier^(n-1), capped at maxDelay,
+// minus a random share of up to jitter of that delay so retries of jobs that failed together spread out
+@Getter
+@Setter
+public class RetryPolicy {
+    private int maxAttempts = 3;
+    private Duration initialDelay = Duration.ofSeconds(1);
+    private Duration maxDelay = Duration.ofHours(1);
+    private double multiplier = 2.0;
+    private double jitter = 0.5;
+
+    public RetryPolicy() {
+    }
+
+    @Builder
+    public RetryPolicy(int maxAttempts, Duration initialDelay, Duration maxDelay, double multiplier, Double jitter) {
+        this.maxAttempts = maxAttempts > 0 ? maxAttempts : this.maxAttempts;
+        this.initialDelay = initialDelay != null ? initialDelay : this.initialDelay;
+        this.maxDelay = maxDelay != null ? maxDelay : this.maxDelay;
+        this.multiplier = multiplier >= 1.0 ? multiplier : this.multiplier;
+        this.jitter = jitter != null ? Math.clamp(jitter, 0.0, 1.0) : this.jitter;
+    }
+
+    public boolean canRetry(int attempts) {
+        return attempts < maxAttempts;
+    }
+
+    public Duration nextDelay(int attempts) {
+        double delayMillis = Math.min(initialDelay.toMillis() * Math.pow(multiplier, Math.max(attempts - 1, 0)), maxDelay.toMillis());
+        double jitterMillis = delayMillis * jitter * ThreadLocalRandom.current().nextDouble();
+        return Duration.ofMillis(Math.round(delayMillis - jitterMillis));
+    }
+}
@@ -0,0 +1,95 @@
+package com.purno.jobman;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+public class SimpleJobMetrics implements JobMetrics {
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final Map<String, Supplier<Number>> gauges = new ConcurrentHashMap<>();
+    private final Map<String, Histogram> latencies = new ConcurrentHashMap<>();
+
+    @Override
+    public void incrementCounter(String name, String tag) {
+        counters.computeIfAbsent(key(name, tag), k -> new LongAdder()).increment();
+    }
+
+    @Override
+    public void registerGauge(String name, Supplier<Number> value) {
+        gauges.put(name, value);
+    }
+
+    @Override
+    public void recordLatency(String name, String tag, long nanos) {
+        latencies.computeIfAbsent(key(name, tag), k -> new Histogram()).record(nanos);
+    }
+
+    public long getCounter(String name, String tag) {
+        LongAdder counter = counters.get(key(name, tag));
+        return counter != null ? counter.sum() : 0;
+    }
+
+    public Number getGauge(String name) {
+        Supplier<Number> gauge = gauges.get(name);
+        return gauge != null ? gauge.get() : null;
+    }
+
+    public Histogram getLatency(String name, String tag) {
+        return latencies.get(key(name, tag));
+    }
+
+    private static String key(String name, String tag) {
+        return tag == null ? name : name + "{" + tag + "}";
+    }
+
+    // Lock-free histogram with power-of-two nanosecond buckets
+    public static class Histogram {
+        private final AtomicLongArray buckets = new AtomicLongArray(64);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        void record(long nanos) {
+            nanos = Math.max(nanos, 0);
+            buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(nanos) - (nanos == 0 ? 0 : 1));
+            count.increment();
+            total.add(nanos);
+            max.accumulate(nanos);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getMaxNanos() {
+            return max.get();
+        }
+
+        public double getMeanNanos() {
+            long samples = count.sum();
+            return samples == 0 ? 0 : (double) total.sum() / samples;
+        }
+
+        // Upper bound of the bucket holding the given percentile, capped at the observed maximum
+        public long getPercentileNanos(double percentile) {
+            long samples = count.sum();
+            if (samples == 0) {
+                return 0;
+            }
+
+            long rank = (long) Math.ceil(samples * percentile / 100.0);
+            long seen = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    long upperBound = i >= 62 ? Long.MAX_VALUE : (2L << i) - 1;
+                    return Math.min(upperBound, max.get());
+                }
+            }
+            return max.get();
+        }
+    }
+}
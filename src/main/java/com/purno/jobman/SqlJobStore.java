@@ -1,23 +1,107 @@
 package com.purno.jobman;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.Builder;
+import lombok.extern.slf4j.Slf4j;
 
 import javax.sql.DataSource;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.sql.*;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+@Slf4j
+public class SqlJobStore implements JobStore, AutoCloseable {
+    private static final String STATE_COLUMNS = "state, owner, message, progress, attempts, start_time, end_time, duration_nanos";
+    private static final String PAYLOAD_COLUMNS = "name, scheduled_time, schedule_name, implementation_class, heavy_weight, priority, job_json, job_data, resource_pools";
+    private static final String JOB_COLUMNS = "id, " + STATE_COLUMNS + ", implementation_class, job_json, job_data";
+    private static final String ARCHIVE_COLUMNS = JOB_COLUMNS + ", name, scheduled_time, schedule_name";
+    private static final String STATE_UPDATE_SQL = "UPDATE jobs SET state = ?, owner = ?, message = ?, progress = ?, attempts = ?, start_time = ?, end_time = ?, duration_nanos = ? WHERE id = ?";
+    private static final String FULL_UPDATE_SQL = "UPDATE jobs SET state = ?, owner = ?, message = ?, progress = ?, attempts = ?, start_time = ?, end_time = ?, duration_nanos = ?, " +
+            "name = ?, scheduled_time = ?, schedule_name = ?, implementation_class = ?, heavy_weight = ?, priority = ?, job_json = ?, job_data = ?, resource_pools = ? WHERE id = ?";
+    private static final String INSERT_SQL = "INSERT INTO jobs (" + STATE_COLUMNS + ", " + PAYLOAD_COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_DEPENDENCY_SQL = "INSERT INTO job_dependencies (depends_on, job_id) VALUES (?, ?)";
+    private static final Duration DEFAULT_FLUSH_INTERVAL = Duration.ofMillis(100);
+    private static final int INSERT_BATCH_SIZE = 1000;
+    // Groups considered per dispatch; each one costs a branch of the candidate query
+    private static final int MAX_DISPATCH_GROUPS = 256;
+    private static final int MAX_WRITTEN_PAYLOADS = 10_000;
 
-public class SqlJobStore implements JobStore {
     private final DataSource dataSource;
-    private final ObjectMapper objectMapper;
+    private final JobCodec codec;
+    // Fingerprint of the last payload written per job, used to skip rewriting the payload on pure state transitions.
+    // Claim refreshes the entry from the row, and the least recently used ones are dropped past the bound
+    private final Map<Long, Long> writtenPayloads = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Long> eldest) {
+            return size() > MAX_WRITTEN_PAYLOADS;
+        }
+    });
 
-    private boolean isTableCreated = false;
+    // Write-behind mode: updates are coalesced per job id and written in JDBC batches
+    private final int writeBehindBatchSize;
+    private final int writeBehindMaxPending;
+    private final boolean syncTerminalStates;
+    private final Map<Long, Job<?>> pendingUpdates = new ConcurrentHashMap<>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final ScheduledExecutorService flusher;
+
+    private final ReentrantLock schemaLock = new ReentrantLock();
+    private volatile boolean isTableCreated = false;
+    private String limitClause = "FETCH FIRST ? ROWS ONLY";
+    private boolean supportsSkipLocked = false;
 
     public SqlJobStore(DataSource dataSource) {
+        this(dataSource, null, false, 0, null, 0, false);
+    }
+
+    @Builder
+    public SqlJobStore(DataSource dataSource,
+                       JobCodec codec,
+                       boolean binaryPayload,
+                       int writeBehindBatchSize,
+                       Duration writeBehindFlushInterval,
+                       int writeBehindMaxPending,
+                       boolean syncTerminalStates) {
         this.dataSource = dataSource;
-        this.objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+        this.codec = codec != null
+                ? codec
+                : new JacksonJobCodec(binaryPayload, mapper -> mapper.addMixIn(Job.class, StateColumnsMixin.class));
+
+        this.writeBehindBatchSize = Math.max(writeBehindBatchSize, 0);
+        this.writeBehindMaxPending = writeBehindMaxPending > 0
+                ? Math.max(writeBehindMaxPending, this.writeBehindBatchSize)
+                : this.writeBehindBatchSize * 10;
+        this.syncTerminalStates = syncTerminalStates;
+
+        if (this.writeBehindBatchSize > 0) {
+            long flushInterval = (writeBehindFlushInterval != null ? writeBehindFlushInterval : DEFAULT_FLUSH_INTERVAL).toMillis();
+            flusher = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("job-store-flusher").daemon().factory());
+            flusher.scheduleWithFixedDelay(this::flushQuietly, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+        } else {
+            flusher = null;
+        }
     }
 
     private void createTable() {
@@ -25,94 +109,565 @@ public class SqlJobStore implements JobStore {
             return;
         }
 
+        schemaLock.lock();
+        try {
+            if (!isTableCreated) {
+                createSchema();
+                isTableCreated = true;
+            }
+        } finally {
+            schemaLock.unlock();
+        }
+    }
+
+    private void createSchema() {
         try (Connection conn = dataSource.getConnection()) {
             DatabaseMetaData metaData = conn.getMetaData();
             String databaseName = metaData.getDatabaseProductName().toLowerCase();
 
             // Determine database-specific syntax
             String idColumnDefinition = "BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY";
+            String binaryColumnType = "BLOB";
             if (databaseName.contains("mysql") || databaseName.contains("mariadb")) {
                 idColumnDefinition = "BIGINT AUTO_INCREMENT PRIMARY KEY";
+                binaryColumnType = "LONGBLOB";
+                limitClause = "LIMIT ?";
+            } else if (databaseName.contains("postgresql")) {
+                binaryColumnType = "BYTEA";
             }
 
+            int majorVersion = metaData.getDatabaseMajorVersion();
+            int minorVersion = metaData.getDatabaseMinorVersion();
+            supportsSkipLocked = databaseName.contains("postgresql")
+                    || (databaseName.contains("mysql") && majorVersion >= 8)
+                    || (databaseName.contains("mariadb") && (majorVersion > 10 || (majorVersion == 10 && minorVersion >= 6)));
+
             String sql = String.format(
                     "CREATE TABLE IF NOT EXISTS jobs (" +
                             "id %s, " +
                             "name VARCHAR(255) NULL, " +
                             "state VARCHAR(50) NOT NULL, " +
+                            "owner VARCHAR(255) NULL, " +
+                            "lease_expires_at TIMESTAMP NULL, " +
+                            "message TEXT NULL, " +
+                            "progress DOUBLE PRECISION NULL, " +
+                            "attempts INT DEFAULT 0 NOT NULL, " +
                             "scheduled_time TIMESTAMP NULL, " +
+                            "schedule_name VARCHAR(255) NULL, " +
+                            "start_time TIMESTAMP NULL, " +
+                            "end_time TIMESTAMP NULL, " +
+                            "duration_nanos BIGINT NULL, " +
                             "implementation_class VARCHAR(500) NOT NULL, " +
                             "heavy_weight SMALLINT NOT NULL, " +
-                            "job_json TEXT NOT NULL" +
-                            ")", idColumnDefinition);
+                            "priority INT DEFAULT 0 NOT NULL, " +
+                            "job_json TEXT NOT NULL, " +
+                            "job_data %s NULL, " +
+                            "resource_pools VARCHAR(1000) NULL" +
+                            ")", idColumnDefinition, binaryColumnType);
 
             try (Statement stmt = conn.createStatement()) {
                 stmt.execute(sql);
-                isTableCreated = true;
+            }
+
+            addColumnIfMissing(conn, "owner", "VARCHAR(255) NULL");
+            addColumnIfMissing(conn, "message", "TEXT NULL");
+            addColumnIfMissing(conn, "start_time", "TIMESTAMP NULL");
+            addColumnIfMissing(conn, "end_time", "TIMESTAMP NULL");
+            addColumnIfMissing(conn, "duration_nanos", "BIGINT NULL");
+            addColumnIfMissing(conn, "job_data", binaryColumnType + " NULL");
+            addColumnIfMissing(conn, "priority", "INT DEFAULT 0 NOT NULL");
+            addColumnIfMissing(conn, "progress", "DOUBLE PRECISION NULL");
+            addColumnIfMissing(conn, "attempts", "INT DEFAULT 0 NOT NULL");
+            addColumnIfMissing(conn, "schedule_name", "VARCHAR(255) NULL");
+            addColumnIfMissing(conn, "lease_expires_at", "TIMESTAMP NULL");
+            addColumnIfMissing(conn, "resource_pools", "VARCHAR(1000) NULL");
+
+            // Lists the due groups and reads each group's first jobs in dispatch order without sorting its backlog
+            dropIndexIfExists(conn, "idx_jobs_dispatch", databaseName);
+            dropIndexIfExists(conn, "idx_jobs_dispatch_order", databaseName);
+            createIndexIfMissing(conn, "idx_jobs_dispatch_group", "state, name, heavy_weight, priority DESC, id");
+            createIndexIfMissing(conn, "idx_jobs_schedule", "state, scheduled_time");
+            createIndexIfMissing(conn, "idx_jobs_schedule_name", "schedule_name, scheduled_time");
+            createIndexIfMissing(conn, "idx_jobs_owner", "owner, state");
+            createIndexIfMissing(conn, "idx_jobs_lease", "state, lease_expires_at");
+            createIndexIfMissing(conn, "idx_jobs_purge", "state, end_time");
+            createIndexIfMissing(conn, "idx_jobs_name", "name, state, id");
+
+            // Keyed by the parent first so releasing the dependents of a finished job is an index range scan
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE TABLE IF NOT EXISTS job_dependencies (" +
+                        "depends_on BIGINT NOT NULL, " +
+                        "job_id BIGINT NOT NULL, " +
+                        "PRIMARY KEY (depends_on, job_id))");
+
+                // Purged jobs can be kept here, out of the way of the dispatch and listing queries
+                stmt.execute(String.format("CREATE TABLE IF NOT EXISTS jobs_archive (" +
+                        "id BIGINT PRIMARY KEY, " +
+                        "name VARCHAR(255) NULL, " +
+                        "state VARCHAR(50) NOT NULL, " +
+                        "owner VARCHAR(255) NULL, " +
+                        "message TEXT NULL, " +
+                        "progress DOUBLE PRECISION NULL, " +
+                        "attempts INT DEFAULT 0 NOT NULL, " +
+                        "scheduled_time TIMESTAMP NULL, " +
+                        "schedule_name VARCHAR(255) NULL, " +
+                        "start_time TIMESTAMP NULL, " +
+                        "end_time TIMESTAMP NULL, " +
+                        "duration_nanos BIGINT NULL, " +
+                        "implementation_class VARCHAR(500) NOT NULL, " +
+                        "job_json TEXT NOT NULL, " +
+                        "job_data %s NULL, " +
+                        "result_data %s NULL" +
+                        ")", binaryColumnType, binaryColumnType));
+
+                // Results live apart from job_json so loading and listing jobs never reads them
+                stmt.execute(String.format("CREATE TABLE IF NOT EXISTS job_results (" +
+                        "job_id BIGINT PRIMARY KEY, " +
+                        "result_data %s NOT NULL" +
+                        ")", binaryColumnType));
             }
         } catch (SQLException e) {
             throw new RuntimeException("Could not create jobs table", e);
         }
     }
 
+    // Another node may run the same migration at the same time, so a failed DDL is fine once the column or index exists
+    private void addColumnIfMissing(Connection conn, String column, String definition) throws SQLException {
+        if (columnExists(conn, column)) {
+            return;
+        }
+
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("ALTER TABLE jobs ADD COLUMN " + column + " " + definition);
+        } catch (SQLException e) {
+            if (!columnExists(conn, column)) {
+                throw e;
+            }
+        }
+    }
+
+    private void createIndexIfMissing(Connection conn, String index, String columns) throws SQLException {
+        if (indexExists(conn, index)) {
+            return;
+        }
+
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE INDEX " + index + " ON jobs (" + columns + ")");
+        } catch (SQLException e) {
+            if (!indexExists(conn, index)) {
+                throw e;
+            }
+        }
+    }
+
+    private boolean columnExists(Connection conn, String column) throws SQLException {
+        DatabaseMetaData metaData = conn.getMetaData();
+        try (ResultSet rs = metaData.getColumns(conn.getCatalog(), null, storedName(metaData, "jobs"), storedName(metaData, column))) {
+            return rs.next();
+        }
+    }
+
+    private boolean indexExists(Connection conn, String index) throws SQLException {
+        DatabaseMetaData metaData = conn.getMetaData();
+        try (ResultSet rs = metaData.getIndexInfo(conn.getCatalog(), null, storedName(metaData, "jobs"), false, false)) {
+            while (rs.next()) {
+                if (index.equalsIgnoreCase(rs.getString("INDEX_NAME"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void dropIndexIfExists(Connection conn, String index, String databaseName) throws SQLException {
+        if (!indexExists(conn, index)) {
+            return;
+        }
+
+        try (Statement stmt = conn.createStatement()) {
+            boolean mysql = databaseName.contains("mysql") || databaseName.contains("mariadb");
+            stmt.execute("DROP INDEX " + index + (mysql ? " ON jobs" : ""));
+        }
+    }
+
+    private static String storedName(DatabaseMetaData metaData, String name) throws SQLException {
+        return metaData.storesUpperCaseIdentifiers() ? name.toUpperCase() : name;
+    }
+
     @Override
     public void save(Job<?> job) {
         createTable();
 
         if (job.getId() <= 0) {
             insert(job);
+        } else if (flusher != null && !flusher.isShutdown() && job.getState() != JobState.INIT) {
+            enqueueUpdate(job);
+        } else if (flusher != null) {
+            // Re-queued jobs must be visible to claimers right away. Holding the flush lock keeps a batch that
+            // already took an older version of this job from committing after this write
+            flushLock.lock();
+            try {
+                pendingUpdates.remove(job.getId());
+                updateAll(List.of(job));
+            } finally {
+                flushLock.unlock();
+            }
+        } else {
+            // Without write-behind no batch can be in flight, so writes need no ordering against one
+            updateAll(List.of(job));
+        }
+    }
+
+    @Override
+    public void saveAll(Collection<? extends Job<?>> jobs) {
+        createTable();
+
+        List<Job<?>> inserts = new ArrayList<>();
+        List<Job<?>> updates = new ArrayList<>();
+        for (Job<?> job : jobs) {
+            (job.getId() <= 0 ? inserts : updates).add(job);
+        }
+
+        for (int from = 0; from < inserts.size(); from += INSERT_BATCH_SIZE) {
+            insertAll(inserts.subList(from, Math.min(from + INSERT_BATCH_SIZE, inserts.size())));
+        }
+        if (flusher == null) {
+            updateAll(updates);
+        } else if (!flusher.isShutdown()) {
+            updates.forEach(this::save);
         } else {
-            update(job);
+            // Same as save(): a batch being flushed must not commit an older version of these jobs afterwards
+            flushLock.lock();
+            try {
+                updates.forEach(job -> pendingUpdates.remove(job.getId()));
+                updateAll(updates);
+            } finally {
+                flushLock.unlock();
+            }
+        }
+    }
+
+    private void enqueueUpdate(Job<?> job) {
+        pendingUpdates.put(job.getId(), job);
+
+        if (syncTerminalStates && job.getState() != null && job.getState().isDone()) {
+            flush();
+        } else if (pendingUpdates.size() >= writeBehindMaxPending) {
+            // The buffer is full, make the caller pay for the flush instead of growing it further
+            flush();
+        } else if (pendingUpdates.size() >= writeBehindBatchSize) {
+            flusher.execute(this::flushQuietly);
+        }
+    }
+
+    @Override
+    public void flush() {
+        flushLock.lock();
+        try {
+            while (!pendingUpdates.isEmpty()) {
+                List<Job<?>> batch = new ArrayList<>();
+                Iterator<Long> jobIds = pendingUpdates.keySet().iterator();
+                while (jobIds.hasNext() && batch.size() < writeBehindBatchSize) {
+                    Job<?> job = pendingUpdates.remove(jobIds.next());
+                    if (job != null) {
+                        batch.add(job);
+                    }
+                }
+
+                try {
+                    updateAll(batch);
+                } catch (RuntimeException e) {
+                    // Keep the failed updates unless a newer one arrived in the meantime
+                    batch.forEach(job -> pendingUpdates.putIfAbsent(job.getId(), job));
+                    throw e;
+                }
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void flushPending() {
+        if (!pendingUpdates.isEmpty()) {
+            flush();
         }
     }
 
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("Error flushing job updates", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (flusher != null) {
+            flusher.shutdown();
+            flush();
+        }
+    }
+
+    // The row, its dependency edges and its result go in one transaction
     private void insert(Job<?> job) {
-        String sql = "INSERT INTO jobs (name, state, scheduled_time, implementation_class, heavy_weight, job_json) VALUES (?, ?, ?, ?, ?, ?)";
+        try (Connection conn = dataSource.getConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
 
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            try {
+                byte[] payload = codec.encode(job);
+                try (PreparedStatement ps = conn.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                    setPayloadParams(ps, setStateParams(ps, 1, job), job, payload);
+                    ps.executeUpdate();
 
-            prepareParams(ps, job);
-            ps.executeUpdate();
+                    // Retrieve id
+                    try (ResultSet generatedKeys = ps.getGeneratedKeys()) {
+                        if (generatedKeys.next()) {
+                            job.setId(generatedKeys.getLong(1));
+                        }
+                    }
+                }
 
-            // Retrieve id
-            try (ResultSet generatedKeys = ps.getGeneratedKeys()) {
-                if (generatedKeys.next()) {
-                    job.setId(generatedKeys.getLong(1));
+                if (job.getDependsOn() != null && !job.getDependsOn().isEmpty()) {
+                    try (PreparedStatement ps = conn.prepareStatement(INSERT_DEPENDENCY_SQL)) {
+                        for (long parentId : new HashSet<>(job.getDependsOn())) {
+                            ps.setLong(1, parentId);
+                            ps.setLong(2, job.getId());
+                            ps.addBatch();
+                        }
+                        ps.executeBatch();
+                    }
                 }
+
+                writeResults(conn, List.of(job));
+                conn.commit();
+                rememberPayload(job, payload);
+            } catch (Exception e) {
+                conn.rollback();
+                job.setId(0);
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
             }
         } catch (Exception e) {
             throw new RuntimeException("Error inserting job", e);
         }
     }
 
-    private void update(Job<?> job) {
-        String sql = "UPDATE jobs SET name= ?, state= ?, scheduled_time= ?, implementation_class= ?, heavy_weight= ?, job_json= ? WHERE id = ?";
+    // One transaction and one JDBC batch per chunk, the generated keys come back in insert order
+    private void insertAll(List<Job<?>> jobs) {
+        try (Connection conn = dataSource.getConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                List<byte[]> payloads = new ArrayList<>(jobs.size());
+                try (PreparedStatement ps = conn.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                    for (Job<?> job : jobs) {
+                        byte[] payload = codec.encode(job);
+                        payloads.add(payload);
+                        setPayloadParams(ps, setStateParams(ps, 1, job), job, payload);
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
 
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
-            prepareParams(ps, job);
-            ps.setLong(7, job.getId());
-            ps.executeUpdate();
+                    try (ResultSet generatedKeys = ps.getGeneratedKeys()) {
+                        for (Job<?> job : jobs) {
+                            if (!generatedKeys.next()) {
+                                throw new SQLException("Driver returned fewer generated keys than inserted rows");
+                            }
+                            job.setId(generatedKeys.getLong(1));
+                        }
+                    }
+                }
+
+                try (PreparedStatement ps = conn.prepareStatement(INSERT_DEPENDENCY_SQL)) {
+                    boolean hasDependencies = false;
+                    for (Job<?> job : jobs) {
+                        if (job.getDependsOn() != null) {
+                            for (long parentId : new HashSet<>(job.getDependsOn())) {
+                                ps.setLong(1, parentId);
+                                ps.setLong(2, job.getId());
+                                ps.addBatch();
+                                hasDependencies = true;
+                            }
+                        }
+                    }
+                    if (hasDependencies) {
+                        ps.executeBatch();
+                    }
+                }
+
+                writeResults(conn, jobs);
+                conn.commit();
+                for (int i = 0; i < jobs.size(); i++) {
+                    rememberPayload(jobs.get(i), payloads.get(i));
+                }
+            } catch (Exception e) {
+                conn.rollback();
+                jobs.forEach(job -> job.setId(0));
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
         } catch (Exception e) {
-            throw new RuntimeException("Error updating job " + job.getId(), e);
+            throw new RuntimeException("Error inserting " + jobs.size() + " jobs", e);
         }
     }
 
-    private void prepareParams(PreparedStatement ps, Job<?> job) throws Exception {
-        ps.setString(1, job.getName());
-        ps.setString(2, job.getState() != null ? job.getState().name() : null);
-        ps.setTimestamp(3, job.getScheduledTime() != null ? Timestamp.from(job.getScheduledTime()) : null);
-        ps.setString(4, job.getClass().getName());
-        ps.setInt(5, job.isHeavyWeight() ? 1 : 0);
-        ps.setString(6, objectMapper.writeValueAsString(job));
+    private void updateAll(List<Job<?>> jobs) {
+        for (int from = 0; from < jobs.size(); from += INSERT_BATCH_SIZE) {
+            updateBatch(jobs.subList(from, Math.min(from + INSERT_BATCH_SIZE, jobs.size())));
+        }
+    }
+
+    private void updateBatch(List<Job<?>> jobs) {
+        if (jobs.isEmpty()) {
+            return;
+        }
+
+        try {
+            // State transitions only touch the state columns, job_json is rewritten when the payload changes
+            List<Job<?>> stateUpdates = new ArrayList<>();
+            List<Job<?>> fullUpdates = new ArrayList<>();
+            Map<Long, byte[]> payloads = new HashMap<>();
+            for (Job<?> job : jobs) {
+                byte[] payload = codec.encode(job);
+                payloads.put(job.getId(), payload);
+                if (Long.valueOf(fingerprint(payload)).equals(writtenPayloads.get(job.getId()))) {
+                    stateUpdates.add(job);
+                } else {
+                    fullUpdates.add(job);
+                }
+            }
+
+            try (Connection conn = dataSource.getConnection()) {
+                if (!stateUpdates.isEmpty()) {
+                    try (PreparedStatement ps = conn.prepareStatement(STATE_UPDATE_SQL)) {
+                        for (Job<?> job : stateUpdates) {
+                            ps.setLong(setStateParams(ps, 1, job), job.getId());
+                            ps.addBatch();
+                        }
+                        ps.executeBatch();
+                    }
+                }
+                if (!fullUpdates.isEmpty()) {
+                    try (PreparedStatement ps = conn.prepareStatement(FULL_UPDATE_SQL)) {
+                        for (Job<?> job : fullUpdates) {
+                            int index = setPayloadParams(ps, setStateParams(ps, 1, job), job, payloads.get(job.getId()));
+                            ps.setLong(index, job.getId());
+                            ps.addBatch();
+                        }
+                        ps.executeBatch();
+                    }
+                }
+                writeResults(conn, jobs);
+            }
+
+            for (Job<?> job : jobs) {
+                rememberPayload(job, payloads.get(job.getId()));
+            }
+        } catch (Exception e) {
+            String target = jobs.size() == 1 ? "job " + jobs.iterator().next().getId() : jobs.size() + " jobs";
+            throw new RuntimeException("Error updating " + target, e);
+        }
+    }
+
+    // A result is written when its job is saved as finished, replacing the one of an earlier run
+    private void writeResults(Connection conn, Collection<Job<?>> jobs) throws Exception {
+        List<Job<?>> finished = jobs.stream()
+                .filter(job -> job.getResult() != null && job.getState() != null && job.getState().isDone())
+                .toList();
+        if (finished.isEmpty()) {
+            return;
+        }
+
+        try (PreparedStatement delete = conn.prepareStatement("DELETE FROM job_results WHERE job_id = ?");
+             PreparedStatement insert = conn.prepareStatement("INSERT INTO job_results (job_id, result_data) VALUES (?, ?)")) {
+            for (Job<?> job : finished) {
+                delete.setLong(1, job.getId());
+                delete.addBatch();
+                insert.setLong(1, job.getId());
+                insert.setBytes(2, codec.encodeResult(job));
+                insert.addBatch();
+            }
+            delete.executeBatch();
+            insert.executeBatch();
+        }
+    }
+
+    private void rememberPayload(Job<?> job, byte[] payload) {
+        if (job.getState() != null && job.getState().isDone()) {
+            writtenPayloads.remove(job.getId());
+        } else {
+            writtenPayloads.put(job.getId(), fingerprint(payload));
+        }
+    }
+
+    // Length and CRC32 side by side, so a changed payload goes unnoticed only if both collide
+    private static long fingerprint(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (long) payload.length << 32 | crc.getValue();
+    }
+
+    private int setStateParams(PreparedStatement ps, int index, Job<?> job) throws SQLException {
+        ps.setString(index++, job.getState() != null ? job.getState().name() : null);
+        ps.setString(index++, job.getOwner());
+        ps.setString(index++, job.getMessage());
+        ps.setObject(index++, job.getProgress(), Types.DOUBLE);
+        ps.setInt(index++, job.getAttempts());
+        ps.setTimestamp(index++, toTimestamp(job.getStartTime()));
+        ps.setTimestamp(index++, toTimestamp(job.getEndTime()));
+        ps.setObject(index++, job.getDuration() != null ? job.getDuration().toNanos() : null, Types.BIGINT);
+        return index;
+    }
+
+    private int setPayloadParams(PreparedStatement ps, int index, Job<?> job, byte[] payload) throws SQLException {
+        ps.setString(index++, job.getName());
+        ps.setTimestamp(index++, toTimestamp(job.getScheduledTime()));
+        ps.setString(index++, job.getScheduleName());
+        ps.setString(index++, job.getClass().getName());
+        ps.setInt(index++, job.isHeavyWeight() ? 1 : 0);
+        ps.setInt(index++, job.getPriority());
+        // job_json stays NOT NULL for tables created before job_data existed
+        ps.setString(index++, codec.isBinary() ? "" : new String(payload, StandardCharsets.UTF_8));
+        ps.setBytes(index++, codec.isBinary() ? payload : null);
+        ps.setString(index++, resourcePools(job));
+        return index;
+    }
+
+    // The pools a job draws from as ",db,gpu,", so claim can leave out the jobs of exhausted pools with a LIKE
+    private static String resourcePools(Job<?> job) {
+        if (job.getResources() == null) {
+            return null;
+        }
+        String pools = job.getResources().entrySet().stream()
+                .filter(demand -> demand.getValue() > 0)
+                .map(Map.Entry::getKey)
+                .sorted()
+                .collect(Collectors.joining(","));
+        return pools.isEmpty() ? null : "," + pools + ",";
+    }
+
+    private static String poolPattern(String pool) {
+        return "%," + pool.replace("!", "!!").replace("%", "!%").replace("_", "!_") + ",%";
+    }
+
+    private static Timestamp toTimestamp(Instant instant) {
+        return instant != null ? Timestamp.from(instant) : null;
     }
 
     @Override
     public Job<?> get(long jobId) {
         createTable();
 
-        String sql = "SELECT id, implementation_class, job_json FROM jobs WHERE id = ?";
+        Job<?> pending = pendingUpdates.get(jobId);
+        if (pending != null) {
+            return pending;
+        }
+
+        String sql = "SELECT " + JOB_COLUMNS + " FROM jobs WHERE id = ?";
 
         try (Connection conn = dataSource.getConnection();
              PreparedStatement ps = conn.prepareStatement(sql)) {
@@ -133,8 +688,9 @@ public class SqlJobStore implements JobStore {
     @Override
     public List<Job<?>> getAll() {
         createTable();
+        flushPending();
 
-        String sql = "SELECT id, implementation_class, job_json FROM jobs ORDER BY id";
+        String sql = "SELECT " + JOB_COLUMNS + " FROM jobs ORDER BY id";
 
         try (Connection conn = dataSource.getConnection();
              PreparedStatement ps = conn.prepareStatement(sql)) {
@@ -147,37 +703,728 @@ public class SqlJobStore implements JobStore {
     }
 
     @Override
-    public List<Job<?>> getForRunningNow(boolean includeHeavyWeight) {
+    public List<Job<?>> getPage(long afterId, int limit) {
         createTable();
+        flushPending();
 
-        String sql = "SELECT id, implementation_class, job_json FROM jobs WHERE state = ? AND (scheduled_time IS NULL OR scheduled_time <= ?)";
-        if (!includeHeavyWeight) {
-            sql += " AND heavy_weight = 0";
+        if (limit <= 0) {
+            return List.of();
         }
-        sql += " ORDER BY id";
+
+        String sql = "SELECT " + JOB_COLUMNS + " FROM jobs WHERE id > ? ORDER BY id " + limitClause;
 
         try (Connection conn = dataSource.getConnection();
              PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, JobState.INIT.name());
-            ps.setTimestamp(2, Timestamp.from(Instant.now()));
+            ps.setLong(1, afterId);
+            ps.setInt(2, limit);
+            ps.setFetchSize(limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                return deserializeJobs(rs);
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Error listing jobs after " + afterId, e);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <R> R getResult(long jobId) {
+        createTable();
+        flushPending();
+
+        String sql = "SELECT r.result_data, j.implementation_class, j.state, j.job_json, j.job_data " +
+                "FROM jobs j LEFT JOIN job_results r ON r.job_id = j.id WHERE j.id = ?";
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setLong(1, jobId);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+
+                String implementationClass = rs.getString("implementation_class");
+                byte[] result = rs.getBytes("result_data");
+                if (result != null) {
+                    return (R) codec.decodeResult(implementationClass, result);
+                }
+
+                // Jobs finished before results had their own table keep them in the payload, newer payloads never do
+                byte[] data = rs.getBytes("job_data");
+                String json = rs.getString("job_json");
+                boolean legacy = data != null
+                        ? JobState.valueOf(rs.getString("state")).isDone()
+                        : json.contains("\"result\"");
+                if (!legacy) {
+                    return null;
+                }
+                return (R) codec.decode(implementationClass, data != null ? data : json.getBytes(StandardCharsets.UTF_8)).getResult();
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Error getting result of job " + jobId, e);
+        }
+    }
+
+    @Override
+    public InputStream openResult(long jobId) {
+        createTable();
+        flushPending();
+
+        String sql = "SELECT result_data FROM job_results WHERE job_id = ?";
+
+        Connection conn = null;
+        try {
+            conn = dataSource.getConnection();
+            PreparedStatement ps = conn.prepareStatement(sql);
+            ps.setLong(1, jobId);
+            ResultSet rs = ps.executeQuery();
+            if (!rs.next()) {
+                conn.close();
+                return null;
+            }
+
+            // The connection stays open while the caller streams the result
+            Connection streamConnection = conn;
+            return new FilterInputStream(rs.getBinaryStream(1)) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        try {
+                            streamConnection.close();
+                        } catch (SQLException e) {
+                            throw new IOException("Error closing result stream of job " + jobId, e);
+                        }
+                    }
+                }
+            };
+        } catch (SQLException e) {
+            if (conn != null) {
+                try {
+                    conn.close();
+                } catch (SQLException closeError) {
+                    e.addSuppressed(closeError);
+                }
+            }
+            throw new RuntimeException("Error opening result of job " + jobId, e);
+        }
+    }
+
+    @Override
+    public List<Job<?>> getDependents(long jobId) {
+        createTable();
+
+        String sql = "SELECT " + JOB_COLUMNS + " FROM jobs WHERE id IN " +
+                "(SELECT job_id FROM job_dependencies WHERE depends_on = ?) ORDER BY id";
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setLong(1, jobId);
+            try (ResultSet rs = ps.executeQuery()) {
+                // Buffered updates win over the stored rows, like in get(), without flushing the buffer
+                return deserializeJobs(rs).stream()
+                        .<Job<?>>map(job -> pendingUpdates.getOrDefault(job.getId(), job))
+                        .toList();
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Error listing dependents of job " + jobId, e);
+        }
+    }
+
+    // Probes the primary key of job_dependencies without loading or flushing anything
+    @Override
+    public boolean hasDependents(long jobId) {
+        createTable();
+
+        String sql = "SELECT 1 FROM job_dependencies WHERE depends_on = ? " + limitClause;
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setLong(1, jobId);
+            ps.setInt(2, 1);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Error checking dependents of job " + jobId, e);
+        }
+    }
+
+    @Override
+    public List<Job<?>> getByState(JobState state, int limit) {
+        createTable();
+        flushPending();
+
+        if (limit <= 0) {
+            return List.of();
+        }
+
+        String sql = "SELECT " + JOB_COLUMNS + " FROM jobs WHERE state = ? ORDER BY id " + limitClause;
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, state.name());
+            ps.setInt(2, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                return deserializeJobs(rs);
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Error listing " + state + " jobs", e);
+        }
+    }
+
+    @Override
+    public List<Job<?>> query(JobQuery query) {
+        createTable();
+        flushPending();
+
+        List<Object> params = new ArrayList<>();
+        String sql = "SELECT " + JOB_COLUMNS + " FROM jobs WHERE " + whereClause(query, true, params)
+                + " ORDER BY id " + limitClause;
+        params.add(query.getLimit());
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            bind(ps, params);
+            ps.setFetchSize(query.getLimit());
             try (ResultSet rs = ps.executeQuery()) {
                 return deserializeJobs(rs);
             }
+        } catch (Exception e) {
+            throw new RuntimeException("Error querying jobs", e);
+        }
+    }
+
+    @Override
+    public long count(JobQuery query) {
+        createTable();
+        flushPending();
+
+        List<Object> params = new ArrayList<>();
+        String sql = "SELECT COUNT(*) FROM jobs WHERE " + whereClause(query, false, params);
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            bind(ps, params);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Error counting jobs", e);
+        }
+    }
+
+    // Only the set filters become conditions, so the planner can pick idx_jobs_dispatch_group, idx_jobs_purge or idx_jobs_name
+    private static String whereClause(JobQuery query, boolean paged, List<Object> params) {
+        List<String> conditions = new ArrayList<>();
+        if (paged) {
+            conditions.add("id > ?");
+            params.add(query.getAfterId());
+        }
+        if (!query.getStates().isEmpty()) {
+            conditions.add("state IN (" + String.join(", ", Collections.nCopies(query.getStates().size(), "?")) + ")");
+            query.getStates().stream().map(JobState::name).sorted().forEach(params::add);
+        }
+        if (query.getName() != null) {
+            conditions.add("name = ?");
+            params.add(query.getName());
+        }
+        if (query.getHeavyWeight() != null) {
+            conditions.add("heavy_weight = ?");
+            params.add(query.getHeavyWeight() ? 1 : 0);
+        }
+        addRange(conditions, params, "scheduled_time", query.getScheduledFrom(), query.getScheduledTo());
+        addRange(conditions, params, "start_time", query.getStartedFrom(), query.getStartedTo());
+        addRange(conditions, params, "end_time", query.getEndedFrom(), query.getEndedTo());
+        return conditions.isEmpty() ? "1 = 1" : String.join(" AND ", conditions);
+    }
+
+    private static void addRange(List<String> conditions, List<Object> params, String column, Instant from, Instant to) {
+        if (from != null) {
+            conditions.add(column + " >= ?");
+            params.add(Timestamp.from(from));
+        }
+        if (to != null) {
+            conditions.add(column + " < ?");
+            params.add(Timestamp.from(to));
+        }
+    }
+
+    private static void bind(PreparedStatement ps, List<Object> params) throws SQLException {
+        int index = 1;
+        for (Object param : params) {
+            ps.setObject(index++, param);
+        }
+    }
+
+    @Override
+    public List<Job<?>> getForRunningNow(int limit, int heavyWeightLimit) {
+        createTable();
+
+        try (Connection conn = dataSource.getConnection()) {
+            return findRunnable(conn, limit, heavyWeightLimit, Map.of(), Map.of());
         } catch (Exception e) {
             throw new RuntimeException("Error listing jobs", e);
         }
     }
 
+    private List<Job<?>> findRunnable(Connection conn, int limit, int heavyWeightLimit, Map<String, Integer> groupWeights,
+                                      Map<String, Integer> availableResources) throws Exception {
+        if (limit <= 0) {
+            return List.of();
+        }
+
+        // Jobs of pools without free permits are left out here; rows written before resource_pools existed and
+        // jobs needing more than a pool has left are passed over once loaded
+        List<String> exhaustedPools = availableResources.entrySet().stream()
+                .filter(pool -> pool.getValue() <= 0)
+                .map(Map.Entry::getKey)
+                .sorted()
+                .toList();
+        List<Object> dueParams = new ArrayList<>();
+        dueParams.add(JobState.INIT.name());
+        dueParams.add(Timestamp.from(Instant.now()));
+        exhaustedPools.forEach(pool -> dueParams.add(poolPattern(pool)));
+        String due = "state = ? AND (scheduled_time IS NULL OR scheduled_time <= ?)"
+                + (heavyWeightLimit <= 0 ? " AND heavy_weight = 0" : "")
+                + " AND (resource_pools IS NULL OR resource_pools NOT LIKE ? ESCAPE '!')".repeat(exhaustedPools.size());
+
+        // First the groups with due jobs, so a deep backlog in one group cannot hide the others. No more groups than
+        // slots can get a job, those holding the most urgent and then the oldest jobs come first
+        List<Object> params = new ArrayList<>(dueParams);
+        params.add(Math.min(limit, MAX_DISPATCH_GROUPS));
+        List<DueGroup> groups = new ArrayList<>();
+        try (PreparedStatement ps = conn.prepareStatement("SELECT name, heavy_weight FROM jobs WHERE " + due
+                + " GROUP BY name, heavy_weight ORDER BY MAX(priority) DESC, MIN(id) " + limitClause)) {
+            bind(ps, params);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    groups.add(new DueGroup(rs.getString(1), rs.getInt(2)));
+                }
+            }
+        }
+        if (groups.isEmpty()) {
+            return List.of();
+        }
+
+        // Then the first jobs of each group off idx_jobs_dispatch_group, ranked across groups: group_rank numbers the
+        // jobs of each name, dividing it by the group weight gives a weighted round-robin; kind_rank caps the
+        // heavyweight jobs without letting them crowd out light ones
+        List<String> weightedGroups = List.copyOf(groupWeights.keySet());
+        params = new ArrayList<>(weightedGroups);
+        List<String> branches = new ArrayList<>();
+        for (int i = 0; i < groups.size(); i++) {
+            DueGroup group = groups.get(i);
+            branches.add("SELECT * FROM (SELECT id, name, heavy_weight, priority FROM jobs WHERE " + due
+                    + (group.name() == null ? " AND name IS NULL" : " AND name = ?")
+                    + " AND heavy_weight = ? ORDER BY priority DESC, id " + limitClause + ") g" + i);
+            params.addAll(dueParams);
+            if (group.name() != null) {
+                params.add(group.name());
+            }
+            params.add(group.heavyWeight());
+            params.add(limit);
+        }
+        params.add(Math.max(heavyWeightLimit, 0));
+        params.addAll(weightedGroups);
+        params.add(limit);
+
+        String sql = "SELECT j." + JOB_COLUMNS.replace(", ", ", j.") + " FROM jobs j JOIN ("
+                + "SELECT * FROM ("
+                + "SELECT ranked.*, ROW_NUMBER() OVER (PARTITION BY heavy_weight ORDER BY " + dispatchOrder("", weightedGroups, groupWeights) + ") AS kind_rank FROM ("
+                + "SELECT candidates.*, "
+                + "ROW_NUMBER() OVER (PARTITION BY name, heavy_weight ORDER BY priority DESC, id) AS group_rank FROM ("
+                + String.join(" UNION ALL ", branches)
+                + ") candidates) ranked"
+                + ") kinds WHERE heavy_weight = 0 OR kind_rank <= ?"
+                + ") runnable ON runnable.id = j.id ORDER BY " + dispatchOrder("runnable.", weightedGroups, groupWeights) + " " + limitClause;
+
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            bind(ps, params);
+            try (ResultSet rs = ps.executeQuery()) {
+                List<Job<?>> jobs = deserializeJobs(rs);
+                // A buffered update means the job has already moved on from INIT
+                if (!pendingUpdates.isEmpty()) {
+                    jobs.removeIf(job -> pendingUpdates.containsKey(job.getId()));
+                }
+                if (!availableResources.isEmpty()) {
+                    // Once a job does not fit, the rest of its group waits behind it
+                    Map<String, Integer> freeResources = new HashMap<>(availableResources);
+                    Set<DueGroup> blocked = new HashSet<>();
+                    jobs.removeIf(job -> {
+                        DueGroup group = new DueGroup(job.getName(), job.isHeavyWeight() ? 1 : 0);
+                        if (blocked.contains(group) || !ResourcePools.reserve(freeResources, job.getResources())) {
+                            blocked.add(group);
+                            return true;
+                        }
+                        return false;
+                    });
+                }
+                return jobs;
+            }
+        }
+    }
+
+    private record DueGroup(String name, int heavyWeight) {
+    }
+
+    // Priority first, then the weighted round-robin across names, then oldest first; binds one name per weighted group
+    private static String dispatchOrder(String prefix, List<String> weightedGroups, Map<String, Integer> groupWeights) {
+        String virtualTime = weightedGroups.isEmpty()
+                ? prefix + "group_rank"
+                : weightedGroups.stream()
+                        .map(group -> " WHEN ? THEN " + BigDecimal.valueOf(1.0 / FairShare.weight(groupWeights, group)).toPlainString())
+                        .collect(Collectors.joining("", prefix + "group_rank * (CASE " + prefix + "name", " ELSE 1 END)"));
+        return prefix + "priority DESC, " + virtualTime + ", " + prefix + "id";
+    }
+
+    // Row locks let concurrent claimers skip each other's candidates; without SKIP LOCKED
+    // the conditional UPDATE in claim() still guarantees each job is claimed only once
+    private List<Job<?>> lockCandidates(Connection conn, List<Job<?>> candidates) throws SQLException {
+        if (!supportsSkipLocked || candidates.isEmpty()) {
+            return candidates;
+        }
+
+        String sql = "SELECT id FROM jobs WHERE state = ? AND id IN (" + "?, ".repeat(candidates.size() - 1) + "?) FOR UPDATE SKIP LOCKED";
+        Set<Long> locked = new HashSet<>();
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, JobState.INIT.name());
+            for (int i = 0; i < candidates.size(); i++) {
+                ps.setLong(i + 2, candidates.get(i).getId());
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    locked.add(rs.getLong(1));
+                }
+            }
+        }
+
+        return candidates.stream()
+                .filter(job -> locked.contains(job.getId()))
+                .toList();
+    }
+
+    @Override
+    public List<Job<?>> claim(String nodeId, int limit, int heavyWeightLimit, Map<String, Integer> groupWeights, Duration leaseDuration,
+                              Map<String, Integer> availableResources) {
+        createTable();
+
+        if (limit <= 0) {
+            return List.of();
+        }
+
+        String claimSql = "UPDATE jobs SET state = ?, owner = ?, lease_expires_at = ? WHERE id = ? AND state = ?";
+        Timestamp leaseExpiresAt = leaseDuration != null ? toTimestamp(Instant.now().plus(leaseDuration)) : null;
+
+        try (Connection conn = dataSource.getConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+
+            try {
+                List<Job<?>> candidates = lockCandidates(conn, findRunnable(conn, limit, heavyWeightLimit, groupWeights, availableResources));
+
+                List<Job<?>> claimed = new ArrayList<>();
+                if (!candidates.isEmpty()) {
+                    try (PreparedStatement ps = conn.prepareStatement(claimSql)) {
+                        for (Job<?> job : candidates) {
+                            ps.setString(1, JobState.WAITING.name());
+                            ps.setString(2, nodeId);
+                            ps.setTimestamp(3, leaseExpiresAt);
+                            ps.setLong(4, job.getId());
+                            ps.setString(5, JobState.INIT.name());
+                            ps.addBatch();
+                        }
+
+                        int[] counts = ps.executeBatch();
+                        for (int i = 0; i < counts.length; i++) {
+                            if (counts[i] > 0 || (supportsSkipLocked && counts[i] == Statement.SUCCESS_NO_INFO)) {
+                                claimed.add(candidates.get(i));
+                            }
+                        }
+                    }
+                }
+
+                conn.commit();
+
+                for (Job<?> job : claimed) {
+                    job.setState(JobState.WAITING);
+                    job.setOwner(nodeId);
+                    rememberPayload(job, codec.encode(job));
+                }
+                return claimed;
+            } catch (Exception e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Error claiming jobs", e);
+        }
+    }
+
+    // The lease column is only written here, by claim and by the reaper, so write-behind saves never roll it back
+    @Override
+    public int renewLeases(String nodeId, Duration leaseDuration) {
+        createTable();
+
+        String sql = "UPDATE jobs SET lease_expires_at = ? WHERE owner = ? AND state IN (?, ?) AND lease_expires_at IS NOT NULL";
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setTimestamp(1, toTimestamp(Instant.now().plus(leaseDuration)));
+            ps.setString(2, nodeId);
+            ps.setString(3, JobState.WAITING.name());
+            ps.setString(4, JobState.RUNNING.name());
+            return ps.executeUpdate();
+        } catch (SQLException e) {
+            throw new RuntimeException("Error renewing leases of node " + nodeId, e);
+        }
+    }
+
+    @Override
+    public List<Job<?>> reclaimExpiredLeases(int limit, JobState targetState, String excludedOwner) {
+        createTable();
+
+        if (targetState != JobState.INIT && targetState != JobState.FAILED) {
+            throw new IllegalArgumentException("Expired jobs can only be moved to INIT or FAILED, not " + targetState);
+        }
+        if (limit <= 0) {
+            return List.of();
+        }
+
+        String selectSql = "SELECT " + JOB_COLUMNS + " FROM jobs WHERE state IN (?, ?) AND lease_expires_at < ? " +
+                (excludedOwner != null ? "AND (owner IS NULL OR owner <> ?) " : "") +
+                "ORDER BY lease_expires_at " + limitClause + (supportsSkipLocked ? " FOR UPDATE SKIP LOCKED" : "");
+        // Re-checks the lease so a renewal that raced the select wins
+        String reclaimSql = "UPDATE jobs SET state = ?, owner = NULL, message = ?, lease_expires_at = NULL " +
+                "WHERE id = ? AND state = ? AND lease_expires_at < ?";
+        Timestamp now = toTimestamp(Instant.now());
+
+        try (Connection conn = dataSource.getConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+
+            try {
+                List<Job<?>> expired;
+                try (PreparedStatement ps = conn.prepareStatement(selectSql)) {
+                    ps.setString(1, JobState.WAITING.name());
+                    ps.setString(2, JobState.RUNNING.name());
+                    ps.setTimestamp(3, now);
+                    int index = 4;
+                    if (excludedOwner != null) {
+                        ps.setString(index++, excludedOwner);
+                    }
+                    ps.setInt(index, limit);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        expired = deserializeJobs(rs);
+                    }
+                }
+
+                List<Job<?>> reclaimed = new ArrayList<>();
+                if (!expired.isEmpty()) {
+                    try (PreparedStatement ps = conn.prepareStatement(reclaimSql)) {
+                        for (Job<?> job : expired) {
+                            ps.setString(1, targetState.name());
+                            ps.setString(2, "Lease of node " + job.getOwner() + " expired");
+                            ps.setLong(3, job.getId());
+                            ps.setString(4, job.getState().name());
+                            ps.setTimestamp(5, now);
+                            ps.addBatch();
+                        }
+
+                        int[] counts = ps.executeBatch();
+                        for (int i = 0; i < counts.length; i++) {
+                            if (counts[i] > 0 || (supportsSkipLocked && counts[i] == Statement.SUCCESS_NO_INFO)) {
+                                reclaimed.add(expired.get(i));
+                            }
+                        }
+                    }
+                }
+
+                conn.commit();
+
+                for (Job<?> job : reclaimed) {
+                    job.setMessage("Lease of node " + job.getOwner() + " expired");
+                    job.setState(targetState);
+                    job.setOwner(null);
+                    rememberPayload(job, codec.encode(job));
+                }
+                return reclaimed;
+            } catch (Exception e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Error reclaiming jobs with expired leases", e);
+        }
+    }
+
+    // Each batch is one short transaction so purging never holds locks on many rows at once
+    @Override
+    public int purge(JobState state, Instant endedBefore, int limit, boolean archive) {
+        createTable();
+        flushPending();
+
+        if (!state.isDone()) {
+            throw new IllegalArgumentException("Only finished jobs can be purged, not " + state);
+        }
+        if (limit <= 0) {
+            return 0;
+        }
+
+        String selectSql = "SELECT id FROM jobs WHERE state = ? AND end_time < ? ORDER BY end_time " + limitClause + " FOR UPDATE";
+
+        try (Connection conn = dataSource.getConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+
+            try {
+                List<Long> ids = new ArrayList<>();
+                try (PreparedStatement ps = conn.prepareStatement(selectSql)) {
+                    ps.setString(1, state.name());
+                    ps.setTimestamp(2, toTimestamp(endedBefore));
+                    ps.setInt(3, limit);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            ids.add(rs.getLong(1));
+                        }
+                    }
+                }
+
+                if (!ids.isEmpty()) {
+                    String idList = "(" + "?, ".repeat(ids.size() - 1) + "?)";
+                    if (archive) {
+                        try (PreparedStatement ps = conn.prepareStatement("INSERT INTO jobs_archive (" + ARCHIVE_COLUMNS + ", result_data) " +
+                                "SELECT " + ARCHIVE_COLUMNS + ", r.result_data " +
+                                "FROM jobs j LEFT JOIN job_results r ON r.job_id = j.id WHERE j.id IN " + idList)) {
+                            setIdParams(ps, 1, ids);
+                            ps.executeUpdate();
+                        }
+                    }
+                    try (PreparedStatement ps = conn.prepareStatement("DELETE FROM job_dependencies WHERE job_id IN " + idList + " OR depends_on IN " + idList)) {
+                        setIdParams(ps, setIdParams(ps, 1, ids), ids);
+                        ps.executeUpdate();
+                    }
+                    try (PreparedStatement ps = conn.prepareStatement("DELETE FROM job_results WHERE job_id IN " + idList)) {
+                        setIdParams(ps, 1, ids);
+                        ps.executeUpdate();
+                    }
+                    try (PreparedStatement ps = conn.prepareStatement("DELETE FROM jobs WHERE id IN " + idList)) {
+                        setIdParams(ps, 1, ids);
+                        ps.executeUpdate();
+                    }
+                }
+
+                conn.commit();
+                ids.forEach(writtenPayloads::remove);
+                return ids.size();
+            } catch (Exception e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Error purging " + state + " jobs", e);
+        }
+    }
+
+    private static int setIdParams(PreparedStatement ps, int index, List<Long> ids) throws SQLException {
+        for (long id : ids) {
+            ps.setLong(index++, id);
+        }
+        return index;
+    }
+
+    // Looks up a job that was purged with archiving
+    public Job<?> getArchived(long jobId) {
+        createTable();
+
+        String sql = "SELECT " + JOB_COLUMNS + " FROM jobs_archive WHERE id = ?";
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setLong(1, jobId);
+            try (ResultSet rs = ps.executeQuery()) {
+                List<Job<?>> jobs = deserializeJobs(rs);
+                return jobs.isEmpty() ? null : jobs.getFirst();
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Error getting archived job " + jobId, e);
+        }
+    }
+
+    @Override
+    public Instant getNextScheduledTime() {
+        createTable();
+        // No flush: jobs are written as INIT directly, buffered updates only ever move a job out of INIT,
+        // which at worst makes this report a due time that has gone away
+
+        String sql = "SELECT MIN(scheduled_time) FROM jobs WHERE state = ? AND scheduled_time > ?";
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, JobState.INIT.name());
+            ps.setTimestamp(2, Timestamp.from(Instant.now()));
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    Timestamp scheduledTime = rs.getTimestamp(1);
+                    return scheduledTime != null ? scheduledTime.toInstant() : null;
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Error finding next scheduled job", e);
+        }
+
+        return null;
+    }
+
+    @Override
+    public Instant getLastScheduledTime(String scheduleName) {
+        createTable();
+        // No flush: scheduled_time is written on insert and on re-queue, neither goes through the buffer
+
+        String sql = "SELECT MAX(scheduled_time) FROM jobs WHERE schedule_name = ?";
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, scheduleName);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    Timestamp scheduledTime = rs.getTimestamp(1);
+                    return scheduledTime != null ? scheduledTime.toInstant() : null;
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Error finding last firing of schedule " + scheduleName, e);
+        }
+
+        return null;
+    }
+
     @Override
     public void delete(long jobId) {
         createTable();
+        pendingUpdates.remove(jobId);
 
         String sql = "DELETE FROM jobs WHERE id = ?";
 
         try (Connection conn = dataSource.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
+             PreparedStatement ps = conn.prepareStatement(sql);
+             PreparedStatement edges = conn.prepareStatement("DELETE FROM job_dependencies WHERE job_id = ? OR depends_on = ?");
+             PreparedStatement result = conn.prepareStatement("DELETE FROM job_results WHERE job_id = ?")) {
             ps.setLong(1, jobId);
             ps.executeUpdate();
+            edges.setLong(1, jobId);
+            edges.setLong(2, jobId);
+            edges.executeUpdate();
+            result.setLong(1, jobId);
+            result.executeUpdate();
+            writtenPayloads.remove(jobId);
         } catch (SQLException e) {
             throw new RuntimeException("Error deleting job " + jobId, e);
         }
@@ -207,12 +1454,45 @@ public class SqlJobStore implements JobStore {
         List<Job<?>> jobs = new ArrayList<>();
 
         while (resultSet.next()) {
-            Class<?> clazz = Class.forName(resultSet.getString("implementation_class"));
-            Job<?> job = (Job<?>) objectMapper.readValue(resultSet.getString("job_json"), clazz);
+            byte[] data = resultSet.getBytes("job_data");
+            if (data == null) {
+                data = resultSet.getString("job_json").getBytes(StandardCharsets.UTF_8);
+            }
+
+            Job<?> job = codec.decode(resultSet.getString("implementation_class"), data);
             job.setId(resultSet.getLong("id"));
+            job.setState(JobState.valueOf(resultSet.getString("state")));
+            job.setOwner(resultSet.getString("owner"));
+            job.setAttempts(resultSet.getInt("attempts"));
+
+            // Rows written before the state columns existed keep these values in job_json only
+            String message = resultSet.getString("message");
+            if (message != null) {
+                job.setMessage(message);
+            }
+            double progress = resultSet.getDouble("progress");
+            if (!resultSet.wasNull()) {
+                job.setProgress(progress);
+            }
+            Timestamp startTime = resultSet.getTimestamp("start_time");
+            if (startTime != null) {
+                job.setStartTime(startTime.toInstant());
+            }
+            Timestamp endTime = resultSet.getTimestamp("end_time");
+            if (endTime != null) {
+                job.setEndTime(endTime.toInstant());
+            }
+            long durationNanos = resultSet.getLong("duration_nanos");
+            if (!resultSet.wasNull()) {
+                job.setDuration(Duration.ofNanos(durationNanos));
+            }
             jobs.add(job);
         }
 
         return jobs;
     }
-}
\ No newline at end of file
+
+    // Only applied to the default codec, see JobCodec.encode
+    @JsonIgnoreProperties(value = {"state", "owner", "message", "progress", "attempts", "startTime", "endTime", "duration", "result"}, allowSetters = true)
+    private abstract static class StateColumnsMixin {}
+}
@@ -8,10 +8,12 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.Timeout;
 
 import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
 import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -56,6 +58,17 @@ abstract class AbstractJobManagerTest {
         }
     }
 
+    @SneakyThrows
+    private void waitForStoredState(long jobId, JobState targetState, Duration timeout) {
+        Instant deadline = Instant.now().plus(timeout);
+        while (jobStore.get(jobId).getState() != targetState) {
+            if (Instant.now().isAfter(deadline)) {
+                fail("Job " + jobId + " did not reach " + targetState + " within " + timeout);
+            }
+            Thread.sleep(10);
+        }
+    }
+
     @Test
     @Timeout(10)
     void testJobSuccessfulExecution() {
@@ -110,6 +123,100 @@ abstract class AbstractJobManagerTest {
         assertEquals(JobState.CANCELED, jobStore.get(job.getId()).getState());
     }
 
+    @Test
+    @Timeout(10)
+    void testCancelStopsJobIgnoringInterrupts() {
+        CheckpointTestJob job = new CheckpointTestJob();
+        job.setCancelable(true);
+        job.setSteps(500);
+        jobManager.add(job);
+        waitUntil(() -> completedSteps(job.getId()) > 0, Duration.ofSeconds(5));
+
+        jobManager.cancel(job.getId());
+
+        waitUntil(() -> "Canceled".equals(jobStore.get(job.getId()).getMessage()), Duration.ofSeconds(2));
+        assertEquals(JobState.CANCELED, jobStore.get(job.getId()).getState());
+        assertTrue(completedSteps(job.getId()) < 500);
+    }
+
+    @Test
+    @Timeout(10)
+    void testPausedJobResumesFromCheckpoint() {
+        jobManager.stop();
+        jobManager = new JobManager(jobStore, progressConsumer, 10, 60);
+        CheckpointTestJob job = new CheckpointTestJob();
+        job.setSteps(25);
+        jobManager.add(job);
+        waitUntil(() -> completedSteps(job.getId()) >= 3, Duration.ofSeconds(5));
+
+        jobManager.pause(job.getId());
+
+        waitUntil(() -> "Paused".equals(jobStore.get(job.getId()).getMessage()), Duration.ofSeconds(2));
+        CheckpointTestJob paused = (CheckpointTestJob) jobStore.get(job.getId());
+        assertEquals(JobState.PAUSED, paused.getState());
+        assertEquals(0, paused.getAttempts());
+        int checkpoint = paused.getCompletedSteps();
+        assertTrue(checkpoint < 25);
+        assertThrows(IllegalStateException.class, () -> jobManager.pause(job.getId()));
+
+        jobManager.resume(job.getId());
+
+        waitForStoredState(job.getId(), JobState.SUCCESSFUL, Duration.ofSeconds(5));
+        CheckpointTestJob finished = (CheckpointTestJob) jobStore.get(job.getId());
+        assertEquals(25, finished.getCompletedSteps());
+        assertEquals(checkpoint, finished.getResumedFrom());
+        assertEquals(1, finished.getAttempts());
+    }
+
+    @Test
+    void testFailureWhilePauseIsPendingIsNotDropped() {
+        TestJob job = new TestJob();
+        job.setSleepTime(Duration.ofMillis(300));
+        job.setFailures(1);
+        jobManager.add(job);
+        waitForStoredState(job.getId(), JobState.RUNNING, Duration.ofSeconds(2));
+
+        jobManager.pause(job.getId());
+
+        waitForStoredState(job.getId(), JobState.FAILED, Duration.ofSeconds(2));
+        assertEquals("Failed: Failure 1", jobStore.get(job.getId()).getMessage());
+    }
+
+    @SneakyThrows
+    @Test
+    void testPausedQueuedJobIsNotDispatched() {
+        jobManager.stop();
+        jobManager = new JobManager(jobStore, progressConsumer, 10, 60);
+        TestJob job = new TestJob();
+        job.setScheduledTime(Instant.now().plusMillis(300));
+        jobManager.add(job);
+
+        jobManager.pause(job.getId());
+
+        Thread.sleep(400);
+        assertEquals(JobState.PAUSED, jobStore.get(job.getId()).getState());
+        assertTrue(jobStore.claim("other-node", 10, true).isEmpty());
+        assertThrows(IllegalStateException.class, () -> jobManager.resume(-1));
+
+        jobManager.resume(job.getId());
+        waitForStoredState(job.getId(), JobState.SUCCESSFUL, Duration.ofSeconds(3));
+    }
+
+    private int completedSteps(long jobId) {
+        return ((CheckpointTestJob) jobStore.get(jobId)).getCompletedSteps();
+    }
+
+    @SneakyThrows
+    private void waitUntil(BooleanSupplier condition, Duration timeout) {
+        Instant deadline = Instant.now().plus(timeout);
+        while (!condition.getAsBoolean()) {
+            if (Instant.now().isAfter(deadline)) {
+                fail("Condition not met within " + timeout);
+            }
+            Thread.sleep(10);
+        }
+    }
+
     @Test
     void testRemoveJob() {
         TestJob job = new TestJob();
@@ -120,4 +227,594 @@ abstract class AbstractJobManagerTest {
 
         assertNull(jobStore.get(id));
     }
-}
\ No newline at end of file
+
+    @Test
+    @Timeout(10)
+    void testAddedJobStartsWithoutWaitingForPoll() {
+        jobManager.stop();
+        jobManager = new JobManager(jobStore, progressConsumer, 10, 60);
+
+        TestJob job = new TestJob();
+        jobManager.add(job);
+
+        waitForStoredState(job.getId(), JobState.SUCCESSFUL, Duration.ofSeconds(2));
+    }
+
+    @Test
+    @Timeout(10)
+    void testAddAllRunsEveryJob() {
+        jobManager.stop();
+        jobManager = new JobManager(jobStore, progressConsumer, 10, 60);
+        TestJob parent = new TestJob();
+        jobManager.add(parent);
+
+        List<TestJob> jobs = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            jobs.add(new TestJob());
+        }
+        TestJob child = new TestJob();
+        child.setDependsOn(List.of(parent.getId()));
+        jobs.add(child);
+        jobManager.addAll(jobs);
+
+        for (TestJob job : jobs) {
+            waitForStoredState(job.getId(), JobState.SUCCESSFUL, Duration.ofSeconds(5));
+        }
+    }
+
+    @Test
+    @Timeout(10)
+    void testAddAllLooksUpSharedParentOnce() {
+        jobManager.stop();
+        SimpleJobMetrics metrics = new SimpleJobMetrics();
+        JobStore instrumented = new InstrumentedJobStore(jobStore, metrics);
+        jobManager = new JobManager(instrumented, progressConsumer, 10, 60);
+        TestJob parent = new TestJob();
+        parent.setScheduledTime(Instant.now().plus(Duration.ofHours(1)));
+        jobManager.add(parent);
+
+        List<TestJob> children = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            TestJob child = new TestJob();
+            child.setDependsOn(List.of(parent.getId()));
+            children.add(child);
+        }
+        assertNull(metrics.getLatency(JobMetrics.STORE_LATENCY, "get"));
+        jobManager.addAll(children);
+
+        // Once to check that it exists and once to evaluate the children against it, plus once more when the
+        // startup scan for blocked jobs runs after the children were saved
+        long gets = metrics.getLatency(JobMetrics.STORE_LATENCY, "get").getCount();
+        assertTrue(gets <= 3, "gets: " + gets);
+        assertEquals(100, jobStore.getByState(JobState.BLOCKED, 1000).size());
+    }
+
+    @Test
+    @Timeout(10)
+    void testScheduledJobStartsWhenDue() {
+        jobManager.stop();
+        jobManager = new JobManager(jobStore, progressConsumer, 10, 60);
+
+        TestJob job = new TestJob();
+        job.setScheduledTime(Instant.now().plusMillis(500));
+        jobManager.add(job);
+
+        assertEquals(JobState.INIT, jobStore.get(job.getId()).getState());
+        waitForStoredState(job.getId(), JobState.SUCCESSFUL, Duration.ofSeconds(3));
+        assertFalse(jobStore.get(job.getId()).getStartTime().isBefore(job.getScheduledTime()));
+    }
+
+    @SneakyThrows
+    @Test
+    void testJobLimit() {
+        jobManager.stop();
+        jobManager = JobManager.builder()
+                .jobStore(jobStore)
+                .progressConsumer(progressConsumer)
+                .jobLimit(3)
+                .schedulerDelayInSeconds(1)
+                .build();
+
+        for (int i = 0; i < 8; i++) {
+            TestJob job = new TestJob();
+            job.setSleepTime(Duration.ofMillis(500));
+            jobManager.add(job);
+        }
+
+        Thread.sleep(200);
+
+        long activeJobs = jobStore.getAll().stream()
+                .filter(j -> j.getState() == JobState.RUNNING || j.getState() == JobState.WAITING)
+                .count();
+        long pendingJobs = jobStore.getAll().stream()
+                .filter(j -> j.getState() == JobState.INIT)
+                .count();
+
+        assertEquals(3, activeJobs);
+        assertEquals(5, pendingJobs);
+    }
+
+    @Test
+    @Timeout(10)
+    void testMetrics() {
+        jobManager.stop();
+        SimpleJobMetrics metrics = new SimpleJobMetrics();
+        jobManager = JobManager.builder()
+                .jobStore(new InstrumentedJobStore(jobStore, metrics))
+                .progressConsumer(progressConsumer)
+                .schedulerDelayInSeconds(60)
+                .metrics(metrics)
+                .build();
+
+        TestJob job = new TestJob();
+        job.setName("Metered Job");
+        job.setSleepTime(Duration.ofMillis(50));
+        jobManager.add(job);
+        waitForStoredState(job.getId(), JobState.SUCCESSFUL, Duration.ofSeconds(3));
+
+        assertEquals(1, metrics.getCounter(JobMetrics.JOBS_DISPATCHED, null));
+        assertEquals(1, metrics.getCounter(JobMetrics.JOBS_COMPLETED, "SUCCESSFUL"));
+        assertEquals(0, metrics.getGauge(JobMetrics.JOBS_ACTIVE).intValue());
+        assertTrue(metrics.getLatency(JobMetrics.DISPATCH_DURATION, null).getCount() >= 1);
+        assertTrue(metrics.getLatency(JobMetrics.STORE_LATENCY, "claim").getCount() >= 1);
+
+        SimpleJobMetrics.Histogram runTime = metrics.getLatency(JobMetrics.JOB_RUN_TIME, "Metered Job");
+        assertEquals(1, runTime.getCount());
+        assertTrue(runTime.getMaxNanos() >= Duration.ofMillis(50).toNanos());
+    }
+
+    @SneakyThrows
+    @Test
+    void testResourcePoolLimit() {
+        jobManager.stop();
+        jobManager = JobManager.builder()
+                .jobStore(jobStore)
+                .progressConsumer(progressConsumer)
+                .resourceLimits(Map.of("db", 3))
+                .schedulerDelayInSeconds(1)
+                .build();
+
+        for (int i = 0; i < 6; i++) {
+            TestJob job = new TestJob();
+            job.setResources(Map.of("db", 2));
+            job.setSleepTime(Duration.ofMillis(500));
+            jobManager.add(job);
+        }
+        TestJob light = new TestJob();
+        light.setResources(Map.of("db", 1));
+        light.setSleepTime(Duration.ofMillis(500));
+        jobManager.add(light);
+
+        Thread.sleep(200);
+
+        List<Job<?>> active = jobStore.getAll().stream()
+                .filter(j -> j.getState() == JobState.RUNNING || j.getState() == JobState.WAITING)
+                .toList();
+        assertTrue(active.stream().mapToInt(j -> j.getResources().get("db")).sum() <= 3);
+        assertFalse(active.isEmpty());
+
+        waitForStoredState(light.getId(), JobState.SUCCESSFUL, Duration.ofSeconds(5));
+    }
+
+    @Test
+    @Timeout(10)
+    void testJobWithoutRunFails() {
+        NoRunTestJob job = new NoRunTestJob();
+        jobManager.add(job);
+
+        waitForStoredState(job.getId(), JobState.FAILED, Duration.ofSeconds(2));
+        assertEquals("Failed: Job " + NoRunTestJob.class.getName() + " must implement run() or run(JobContext)",
+                jobStore.get(job.getId()).getMessage());
+    }
+
+    @Test
+    @Timeout(10)
+    void testSaturatedPoolDoesNotHoldBackOtherJobs() {
+        jobManager.stop();
+        jobManager = JobManager.builder()
+                .jobStore(jobStore)
+                .progressConsumer(progressConsumer)
+                .resourceLimits(Map.of("db", 1))
+                .jobLimit(2)
+                .schedulerDelayInSeconds(60)
+                .build();
+
+        List<Long> backlog = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            TestJob job = new TestJob();
+            job.setResources(Map.of("db", 1));
+            job.setSleepTime(Duration.ofMillis(300));
+            jobManager.add(job);
+            backlog.add(job.getId());
+        }
+        List<Long> unconstrained = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            TestJob job = new TestJob();
+            job.setName("light");
+            jobManager.add(job);
+            unconstrained.add(job.getId());
+        }
+
+        // The db jobs alone take three seconds one after another
+        for (long id : unconstrained) {
+            waitForStoredState(id, JobState.SUCCESSFUL, Duration.ofMillis(1500));
+        }
+        assertEquals(JobState.INIT, jobStore.get(backlog.getLast()).getState());
+    }
+
+    @Test
+    @Timeout(10)
+    void testJobExceedingPoolCapacityIsRejected() {
+        jobManager.stop();
+        jobManager = JobManager.builder()
+                .jobStore(jobStore)
+                .progressConsumer(progressConsumer)
+                .resourceLimits(Map.of("gpu", 1))
+                .schedulerDelayInSeconds(60)
+                .build();
+
+        TestJob job = new TestJob();
+        job.setResources(Map.of("gpu", 2));
+        assertThrows(IllegalArgumentException.class, () -> jobManager.add(job));
+        assertThrows(IllegalArgumentException.class, () -> jobManager.addAll(List.of(new TestJob(), job)));
+        assertEquals(0, jobStore.count());
+    }
+
+    @Test
+    @Timeout(10)
+    void testProgressUpdatesAreThrottled() {
+        jobManager.stop();
+        jobManager = JobManager.builder()
+                .jobStore(jobStore)
+                .progressConsumer(progressConsumer)
+                .schedulerDelayInSeconds(60)
+                .progressUpdatesPerSecond(5)
+                .build();
+
+        ProgressTestJob job = new ProgressTestJob();
+        job.setSteps(500);
+        jobManager.add(job);
+        waitForStoredState(job.getId(), JobState.SUCCESSFUL, Duration.ofSeconds(5));
+
+        Job<?> retrieved = jobStore.get(job.getId());
+        assertEquals(100.0, retrieved.getProgress());
+        assertEquals(Map.of("rows", 500L), retrieved.getCounters());
+
+        // WAITING, RUNNING and the final save plus a handful of throttled progress updates
+        int reports = progressMap.get(job.getId()).size();
+        assertTrue(reports > 3, "reports: " + reports);
+        assertTrue(reports < 20, "reports: " + reports);
+    }
+
+    @Test
+    @Timeout(10)
+    void testFailedJobIsRetriedWithBackoff() {
+        jobManager.stop();
+        jobManager = JobManager.builder()
+                .jobStore(jobStore)
+                .progressConsumer(progressConsumer)
+                .schedulerDelayInSeconds(60)
+                .retryPolicy(RetryPolicy.builder().maxAttempts(3).initialDelay(Duration.ofMillis(100)).jitter(0.0).build())
+                .build();
+
+        TestJob job = new TestJob();
+        job.setFailures(2);
+        Instant added = Instant.now();
+        jobManager.add(job);
+
+        waitForStoredState(job.getId(), JobState.SUCCESSFUL, Duration.ofSeconds(5));
+        assertEquals(3, jobStore.get(job.getId()).getAttempts());
+        // 100ms after the first failure and 200ms after the second
+        assertTrue(Duration.between(added, jobStore.get(job.getId()).getEndTime()).toMillis() >= 300);
+    }
+
+    @Test
+    @Timeout(10)
+    void testExhaustedRetriesAreDeadLettered() {
+        jobManager.stop();
+        jobManager = JobManager.builder()
+                .jobStore(jobStore)
+                .progressConsumer(progressConsumer)
+                .schedulerDelayInSeconds(60)
+                .build();
+
+        TestJob job = new TestJob();
+        job.setFailures(5);
+        job.setRetryPolicy(RetryPolicy.builder().maxAttempts(2).initialDelay(Duration.ofMillis(10)).build());
+        jobManager.add(job);
+
+        waitForStoredState(job.getId(), JobState.DEAD_LETTER, Duration.ofSeconds(5));
+        Job<?> retrieved = jobStore.get(job.getId());
+        assertEquals(2, retrieved.getAttempts());
+        // The job turns DEAD_LETTER just before its final save, which is what lists it by state
+        waitUntil(() -> jobStore.getByState(JobState.DEAD_LETTER, 10).stream().map(Job::getId).toList().equals(List.of(job.getId())),
+                Duration.ofSeconds(2));
+    }
+
+    @Test
+    @Timeout(10)
+    void testFailureWithoutRetryPolicy() {
+        TestJob job = new TestJob();
+        job.setFailures(1);
+        jobManager.add(job);
+
+        waitForStoredState(job.getId(), JobState.FAILED, Duration.ofSeconds(5));
+        assertEquals(1, jobStore.get(job.getId()).getAttempts());
+    }
+
+    @SneakyThrows
+    @Test
+    @Timeout(10)
+    void testFixedRateSchedule() {
+        jobManager.schedule(RecurringSchedule.builder()
+                .name("every-200ms")
+                .jobFactory(TestJob::new)
+                .fixedRate(Duration.ofMillis(200))
+                .build());
+
+        Thread.sleep(1100);
+        jobManager.unschedule("every-200ms");
+        Thread.sleep(300);
+
+        List<Job<?>> fired = jobStore.getAll().stream()
+                .filter(j -> "every-200ms".equals(j.getScheduleName()))
+                .toList();
+        assertTrue(fired.size() >= 4 && fired.size() <= 7, "fired " + fired.size());
+        assertEquals(fired.size(), fired.stream().map(Job::getScheduledTime).distinct().count());
+
+        Thread.sleep(500);
+        assertEquals(fired.size(), jobStore.getAll().stream().filter(j -> "every-200ms".equals(j.getScheduleName())).count());
+    }
+
+    @SneakyThrows
+    @Test
+    @Timeout(10)
+    void testMissedFiringsAreCaughtUp() {
+        TestJob previous = new TestJob();
+        previous.setScheduleName("catch-up");
+        previous.setState(JobState.SUCCESSFUL);
+        previous.setScheduledTime(Instant.now().minusMillis(3050));
+        jobStore.save(previous);
+
+        jobManager.schedule(RecurringSchedule.builder()
+                .name("catch-up")
+                .jobFactory(TestJob::new)
+                .fixedRate(Duration.ofSeconds(1))
+                .misfirePolicy(RecurringSchedule.MisfirePolicy.CATCH_UP)
+                .build());
+        Thread.sleep(300);
+
+        // Three one second firings were missed while nothing was running
+        long fired = jobStore.getAll().stream().filter(j -> "catch-up".equals(j.getScheduleName())).count() - 1;
+        assertEquals(3, fired);
+    }
+
+    @SneakyThrows
+    @Test
+    @Timeout(10)
+    void testMissedFiringsAreSkipped() {
+        TestJob previous = new TestJob();
+        previous.setScheduleName("skip");
+        previous.setState(JobState.SUCCESSFUL);
+        previous.setScheduledTime(Instant.now().minusMillis(3050));
+        jobStore.save(previous);
+
+        jobManager.schedule(RecurringSchedule.builder()
+                .name("skip")
+                .jobFactory(TestJob::new)
+                .fixedRate(Duration.ofSeconds(1))
+                .build());
+        Thread.sleep(300);
+
+        long fired = jobStore.getAll().stream().filter(j -> "skip".equals(j.getScheduleName())).count() - 1;
+        assertEquals(1, fired);
+    }
+
+    @SneakyThrows
+    @Test
+    @Timeout(10)
+    void testFixedDelayWaitsForCompletion() {
+        jobManager.schedule(RecurringSchedule.builder()
+                .name("fixed-delay")
+                .jobFactory(() -> {
+                    TestJob job = new TestJob();
+                    job.setSleepTime(Duration.ofMillis(300));
+                    return job;
+                })
+                .fixedDelay(Duration.ofMillis(100))
+                .build());
+
+        Thread.sleep(1000);
+
+        // Each cycle takes the 300ms run plus the 100ms delay, so runs never overlap
+        List<Job<?>> fired = jobStore.getAll().stream()
+                .filter(j -> "fixed-delay".equals(j.getScheduleName()))
+                .toList();
+        assertTrue(fired.size() >= 2 && fired.size() <= 3, "fired " + fired.size());
+        assertTrue(fired.stream().filter(j -> j.getState() == JobState.RUNNING).count() <= 1);
+    }
+
+    @Test
+    @Timeout(10)
+    void testFixedDelayContinuesAfterQueuedJobIsCanceled() {
+        TestJob parent = new TestJob();
+        parent.setScheduledTime(Instant.now().plus(Duration.ofHours(1)));
+        jobManager.add(parent);
+        jobManager.schedule(RecurringSchedule.builder()
+                .name("canceled-delay")
+                .jobFactory(() -> {
+                    TestJob job = new TestJob();
+                    job.setCancelable(true);
+                    job.setDependsOn(List.of(parent.getId()));
+                    return job;
+                })
+                .fixedDelay(Duration.ofMillis(100))
+                .build());
+
+        waitUntil(() -> fired("canceled-delay").size() == 1, Duration.ofSeconds(2));
+        Job<?> blocked = fired("canceled-delay").getFirst();
+        assertEquals(JobState.BLOCKED, blocked.getState());
+
+        // The job never runs, so only the cancel can start the next delay
+        jobManager.cancel(blocked.getId());
+
+        waitUntil(() -> fired("canceled-delay").size() == 2, Duration.ofSeconds(2));
+    }
+
+    private List<Job<?>> fired(String scheduleName) {
+        return jobStore.getAll().stream()
+                .filter(j -> scheduleName.equals(j.getScheduleName()))
+                .toList();
+    }
+
+    @Test
+    @Timeout(10)
+    void testDependentStartsWhenParentSucceeds() {
+        TestJob parent = new TestJob();
+        parent.setSleepTime(Duration.ofMillis(300));
+        jobManager.add(parent);
+        TestJob child = new TestJob();
+        child.setDependsOn(List.of(parent.getId()));
+        jobManager.add(child);
+
+        assertEquals(JobState.BLOCKED, jobStore.get(child.getId()).getState());
+        waitForStoredState(child.getId(), JobState.SUCCESSFUL, Duration.ofSeconds(5));
+        assertFalse(jobStore.get(child.getId()).getStartTime().isBefore(jobStore.get(parent.getId()).getEndTime()));
+    }
+
+    @Test
+    @Timeout(10)
+    void testDependencyResultsArePassedDownstream() {
+        SumTestJob left = new SumTestJob();
+        left.setValue(1);
+        jobManager.add(left);
+        SumTestJob right = new SumTestJob();
+        right.setValue(2);
+        jobManager.add(right);
+        SumTestJob join = new SumTestJob();
+        join.setValue(10);
+        join.setDependsOn(List.of(left.getId(), right.getId()));
+        jobManager.add(join);
+
+        waitForStoredState(join.getId(), JobState.SUCCESSFUL, Duration.ofSeconds(5));
+        Integer result = jobStore.getResult(join.getId());
+        assertEquals(13, result);
+    }
+
+    @Test
+    @Timeout(10)
+    void testFailurePropagatesToDependents() {
+        TestJob parent = new TestJob();
+        parent.setFailures(1);
+        jobManager.add(parent);
+        TestJob child = new TestJob();
+        child.setDependsOn(List.of(parent.getId()));
+        jobManager.add(child);
+        TestJob grandChild = new TestJob();
+        grandChild.setDependsOn(List.of(child.getId()));
+        jobManager.add(grandChild);
+
+        waitForStoredState(grandChild.getId(), JobState.FAILED, Duration.ofSeconds(5));
+        assertEquals(JobState.FAILED, jobStore.get(child.getId()).getState());
+        assertEquals(0, jobStore.get(child.getId()).getAttempts());
+        assertEquals("Dependency " + child.getId() + " ended as FAILED", jobStore.get(grandChild.getId()).getMessage());
+    }
+
+    @Test
+    void testUnknownDependencyIsRejected() {
+        TestJob job = new TestJob();
+        job.setDependsOn(List.of(Long.MAX_VALUE));
+        assertThrows(IllegalStateException.class, () -> jobManager.add(job));
+    }
+
+    @Test
+    @Timeout(10)
+    void testOrphanedJobIsRequeued() {
+        jobManager.stop();
+        TestJob job = new TestJob();
+        jobStore.save(job);
+        jobStore.claim("dead-node", 1, 1, Map.of(), Duration.ofMillis(1));
+
+        jobManager = JobManager.builder()
+                .jobStore(jobStore)
+                .progressConsumer(progressConsumer)
+                .leaseDuration(Duration.ofMillis(300))
+                .build();
+
+        waitForStoredState(job.getId(), JobState.SUCCESSFUL, Duration.ofSeconds(5));
+        assertEquals(jobManager.getNodeId(), jobStore.get(job.getId()).getOwner());
+    }
+
+    @Test
+    @Timeout(10)
+    void testOrphanedJobIsFailedByPolicy() {
+        jobManager.stop();
+        TestJob job = new TestJob();
+        jobStore.save(job);
+        jobStore.claim("dead-node", 1, 1, Map.of(), Duration.ofMillis(1));
+
+        jobManager = JobManager.builder()
+                .jobStore(jobStore)
+                .progressConsumer(progressConsumer)
+                .leaseDuration(Duration.ofMillis(300))
+                .leaseExpiryPolicy(JobManager.LeaseExpiryPolicy.FAIL)
+                .build();
+
+        waitForStoredState(job.getId(), JobState.FAILED, Duration.ofSeconds(5));
+        assertEquals("Lease of node dead-node expired", jobStore.get(job.getId()).getMessage());
+        assertEquals(0, jobStore.get(job.getId()).getAttempts());
+    }
+
+    @Test
+    @Timeout(10)
+    void testLeaseOfRunningJobIsRenewed() {
+        jobManager.stop();
+        jobManager = JobManager.builder()
+                .jobStore(jobStore)
+                .progressConsumer(progressConsumer)
+                .leaseDuration(Duration.ofMillis(300))
+                .build();
+
+        TestJob job = new TestJob();
+        job.setSleepTime(Duration.ofMillis(1000));
+        jobManager.add(job);
+
+        waitForStoredState(job.getId(), JobState.SUCCESSFUL, Duration.ofSeconds(5));
+        assertEquals(1, jobStore.get(job.getId()).getAttempts());
+    }
+
+    @SneakyThrows
+    @Test
+    @Timeout(10)
+    void testRetentionPurgesFinishedJobs() {
+        jobManager.stop();
+        jobManager = JobManager.builder()
+                .jobStore(jobStore)
+                .progressConsumer(progressConsumer)
+                .retentionPolicy(RetentionPolicy.builder()
+                        .maxAge(Map.of(JobState.SUCCESSFUL, Duration.ofMillis(100)))
+                        .purgeInterval(Duration.ofMillis(100))
+                        .batchSize(2)
+                        .build())
+                .build();
+
+        List<TestJob> jobs = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            TestJob job = new TestJob();
+            jobs.add(job);
+            jobManager.add(job);
+        }
+        TestJob failed = new TestJob();
+        failed.setFailures(1);
+        jobManager.add(failed);
+
+        waitForStoredState(failed.getId(), JobState.FAILED, Duration.ofSeconds(5));
+        Instant deadline = Instant.now().plusSeconds(5);
+        while (jobStore.count() > 1) {
+            assertTrue(Instant.now().isBefore(deadline), "jobs left " + jobStore.count());
+            Thread.sleep(20);
+        }
+        assertTrue(jobs.stream().allMatch(job -> jobStore.get(job.getId()) == null));
+        assertNotNull(jobStore.get(failed.getId()));
+    }
+}
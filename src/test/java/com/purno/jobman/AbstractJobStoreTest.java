@@ -3,8 +3,20 @@ package com.purno.jobman;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -32,6 +44,32 @@ abstract class AbstractJobStoreTest {
         assertEquals("Test Job", retrieved.getName());
     }
 
+    @Test
+    void testSaveAll() {
+        TestJob existing = new TestJob();
+        jobStore.save(existing);
+        existing.setName("Renamed");
+
+        List<TestJob> jobs = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            TestJob job = new TestJob();
+            job.setName("Bulk " + i);
+            jobs.add(job);
+        }
+        List<Job<?>> batch = new ArrayList<>(jobs);
+        batch.add(existing);
+        jobStore.saveAll(batch);
+
+        List<Long> ids = jobs.stream().map(Job::getId).toList();
+        assertEquals(ids.stream().sorted().distinct().toList(), ids);
+        assertTrue(ids.getFirst() > existing.getId());
+        for (int i = 0; i < jobs.size(); i++) {
+            assertEquals("Bulk " + i, jobStore.get(ids.get(i)).getName());
+        }
+        assertEquals("Renamed", jobStore.get(existing.getId()).getName());
+        assertEquals(6, jobStore.count());
+    }
+
     @Test
     void testUpdate() {
         TestJob job = new TestJob();
@@ -47,6 +85,37 @@ abstract class AbstractJobStoreTest {
         assertEquals(JobState.RUNNING, retrieved.getState());
     }
 
+    @Test
+    void testStateFieldsRoundTrip() {
+        TestJob job = new TestJob();
+        job.setName("State Job");
+        jobStore.save(job);
+
+        Instant start = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        job.setState(JobState.FAILED);
+        job.setMessage("Failed: boom");
+        job.setOwner("node-1");
+        job.setStartTime(start);
+        job.setEndTime(start.plusSeconds(2));
+        job.setDuration(Duration.ofMillis(1500));
+        job.setProgress(42.5);
+        job.setCounters(Map.of("rows", 7L));
+        job.setAttempts(2);
+        jobStore.save(job);
+
+        Job<?> retrieved = jobStore.get(job.getId());
+        assertEquals("State Job", retrieved.getName());
+        assertEquals(JobState.FAILED, retrieved.getState());
+        assertEquals("Failed: boom", retrieved.getMessage());
+        assertEquals("node-1", retrieved.getOwner());
+        assertEquals(start, retrieved.getStartTime());
+        assertEquals(start.plusSeconds(2), retrieved.getEndTime());
+        assertEquals(Duration.ofMillis(1500), retrieved.getDuration());
+        assertEquals(42.5, retrieved.getProgress());
+        assertEquals(Map.of("rows", 7L), retrieved.getCounters());
+        assertEquals(2, retrieved.getAttempts());
+    }
+
     @Test
     void testDelete() {
         TestJob job = new TestJob();
@@ -84,6 +153,483 @@ abstract class AbstractJobStoreTest {
         assertEquals(job1.getId(), runnable.getFirst().getId());
     }
 
+    @Test
+    void testScheduledJobBecomesRunnableWhenDue() throws InterruptedException {
+        TestJob job = new TestJob();
+        job.setScheduledTime(Instant.now().plusMillis(100));
+        jobStore.save(job);
+
+        assertTrue(jobStore.getForRunningNow(true).isEmpty());
+
+        Thread.sleep(150);
+
+        List<Job<?>> runnable = jobStore.getForRunningNow(true);
+        assertEquals(1, runnable.size());
+        assertEquals(job.getId(), runnable.getFirst().getId());
+        assertNull(jobStore.getNextScheduledTime());
+    }
+
+    @Test
+    void testStateChangesUpdateRunnableJobs() {
+        TestJob job = new TestJob();
+        jobStore.save(job);
+        assertEquals(1, jobStore.getForRunningNow(true).size());
+
+        job.setState(JobState.SUCCESSFUL);
+        jobStore.save(job);
+        assertTrue(jobStore.getForRunningNow(true).isEmpty());
+
+        job.setState(JobState.INIT);
+        job.setHeavyWeight(true);
+        jobStore.save(job);
+        assertTrue(jobStore.getForRunningNow(false).isEmpty());
+        assertEquals(1, jobStore.getForRunningNow(true).size());
+
+        jobStore.delete(job.getId());
+        assertTrue(jobStore.getForRunningNow(true).isEmpty());
+    }
+
+    @Test
+    void testGetForRunningNowRespectsLimits() {
+        for (int i = 0; i < 3; i++) {
+            jobStore.save(new TestJob());
+
+            TestJob heavy = new TestJob();
+            heavy.setHeavyWeight(true);
+            jobStore.save(heavy);
+        }
+
+        List<Job<?>> runnable = jobStore.getForRunningNow(4, 1);
+        assertEquals(4, runnable.size());
+        assertEquals(1, runnable.stream().filter(Job::isHeavyWeight).count());
+
+        runnable = jobStore.getForRunningNow(2, 0);
+        assertEquals(2, runnable.size());
+        assertTrue(runnable.stream().noneMatch(Job::isHeavyWeight));
+
+        assertEquals(6, jobStore.getForRunningNow(10, 10).size());
+        assertTrue(jobStore.getForRunningNow(0, 10).isEmpty());
+    }
+
+    @Test
+    void testClaim() {
+        TestJob light = new TestJob();
+        jobStore.save(light);
+
+        TestJob heavy = new TestJob();
+        heavy.setHeavyWeight(true);
+        jobStore.save(heavy);
+
+        TestJob future = new TestJob();
+        future.setScheduledTime(Instant.now().plusSeconds(60));
+        jobStore.save(future);
+
+        List<Job<?>> claimed = jobStore.claim("node-1", 10, false);
+
+        assertEquals(1, claimed.size());
+        assertEquals(light.getId(), claimed.getFirst().getId());
+        assertEquals(JobState.WAITING, claimed.getFirst().getState());
+
+        Job<?> retrieved = jobStore.get(light.getId());
+        assertEquals(JobState.WAITING, retrieved.getState());
+        assertEquals("node-1", retrieved.getOwner());
+
+        claimed = jobStore.claim("node-2", 10, true);
+        assertEquals(1, claimed.size());
+        assertEquals(heavy.getId(), claimed.getFirst().getId());
+        assertEquals("node-2", jobStore.get(heavy.getId()).getOwner());
+
+        assertTrue(jobStore.claim("node-1", 10, true).isEmpty());
+    }
+
+    @Test
+    void testClaimRespectsMaxJobs() {
+        for (int i = 0; i < 5; i++) {
+            jobStore.save(new TestJob());
+        }
+
+        assertEquals(2, jobStore.claim("node-1", 2, true).size());
+        assertEquals(3, jobStore.claim("node-1", 10, true).size());
+    }
+
+    @Test
+    void testGetByState() {
+        TestJob waiting = new TestJob();
+        jobStore.save(waiting);
+        TestJob deadLetter = new TestJob();
+        deadLetter.setState(JobState.DEAD_LETTER);
+        jobStore.save(deadLetter);
+
+        assertEquals(List.of(deadLetter.getId()), jobStore.getByState(JobState.DEAD_LETTER, 10).stream().map(Job::getId).toList());
+        assertEquals(List.of(waiting.getId()), jobStore.getByState(JobState.INIT, 10).stream().map(Job::getId).toList());
+        assertTrue(jobStore.getByState(JobState.INIT, 0).isEmpty());
+    }
+
+    @Test
+    void testQueryFiltersByStateNameAndTime() {
+        Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        List<Long> recentFailures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            TestJob job = new TestJob();
+            job.setName(i < 4 ? "Import" : "Export");
+            job.setState(i == 0 ? JobState.SUCCESSFUL : JobState.FAILED);
+            job.setEndTime(i == 3 ? now.minus(Duration.ofHours(2)) : now.minusSeconds(i));
+            jobStore.save(job);
+            if (i == 1 || i == 2) {
+                recentFailures.add(job.getId());
+            }
+        }
+        jobStore.save(new TestJob());
+
+        JobQuery query = JobQuery.builder()
+                .states(Set.of(JobState.FAILED, JobState.DEAD_LETTER))
+                .name("Import")
+                .endedFrom(now.minus(Duration.ofHours(1)))
+                .build();
+
+        assertEquals(recentFailures, jobStore.query(query).stream().map(Job::getId).toList());
+        assertEquals(2, jobStore.count(query));
+        assertEquals(3, jobStore.count(JobQuery.builder().name("Import").states(Set.of(JobState.FAILED)).build()));
+        assertEquals(6, jobStore.count(JobQuery.builder().build()));
+        assertEquals(1, jobStore.count(JobQuery.builder().states(Set.of(JobState.INIT)).heavyWeight(false).build()));
+        assertEquals(0, jobStore.count(JobQuery.builder().heavyWeight(true).build()));
+    }
+
+    @Test
+    void testQueryPagesByKeyset() {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            TestJob job = new TestJob();
+            job.setState(i % 2 == 0 ? JobState.FAILED : JobState.CANCELED);
+            jobStore.save(job);
+            ids.add(job.getId());
+        }
+
+        JobQuery query = JobQuery.builder().states(Set.of(JobState.FAILED, JobState.CANCELED)).limit(2).build();
+        List<Long> seen = new ArrayList<>();
+        List<Job<?>> page = jobStore.query(query);
+        while (!page.isEmpty()) {
+            assertTrue(page.size() <= 2);
+            page.forEach(job -> seen.add(job.getId()));
+            page = jobStore.query(query.after(page.getLast().getId()));
+        }
+
+        assertEquals(ids, seen);
+        assertEquals(5, jobStore.count(query.after(ids.get(2))));
+    }
+
+    @Test
+    void testGetDependents() {
+        TestJob parent = new TestJob();
+        jobStore.save(parent);
+        TestJob other = new TestJob();
+        jobStore.save(other);
+        TestJob first = new TestJob();
+        first.setDependsOn(List.of(parent.getId()));
+        jobStore.save(first);
+        TestJob second = new TestJob();
+        second.setDependsOn(List.of(parent.getId(), other.getId()));
+        jobStore.save(second);
+
+        assertEquals(List.of(first.getId(), second.getId()), jobStore.getDependents(parent.getId()).stream().map(Job::getId).toList());
+        assertEquals(List.of(second.getId()), jobStore.getDependents(other.getId()).stream().map(Job::getId).toList());
+        assertEquals(List.of(parent.getId(), other.getId()), jobStore.get(second.getId()).getDependsOn());
+
+        assertTrue(jobStore.hasDependents(parent.getId()));
+        assertFalse(jobStore.hasDependents(first.getId()));
+
+        jobStore.delete(second.getId());
+        assertTrue(jobStore.getDependents(other.getId()).isEmpty());
+        assertFalse(jobStore.hasDependents(other.getId()));
+    }
+
+    @SneakyThrows
+    @Test
+    void testExpiredLeasesAreReclaimed() {
+        TestJob orphaned = new TestJob();
+        jobStore.save(orphaned);
+        assertEquals(1, jobStore.claim("dead-node", 1, 1, Map.of(), Duration.ofMillis(1)).size());
+        TestJob alive = new TestJob();
+        jobStore.save(alive);
+        assertEquals(1, jobStore.claim("live-node", 1, 1, Map.of(), Duration.ofMinutes(1)).size());
+
+        Thread.sleep(20);
+        List<Job<?>> reclaimed = jobStore.reclaimExpiredLeases(10, JobState.INIT);
+
+        assertEquals(List.of(orphaned.getId()), reclaimed.stream().map(Job::getId).toList());
+        Job<?> retrieved = jobStore.get(orphaned.getId());
+        assertEquals(JobState.INIT, retrieved.getState());
+        assertNull(retrieved.getOwner());
+        assertEquals("Lease of node dead-node expired", retrieved.getMessage());
+        assertTrue(jobStore.reclaimExpiredLeases(10, JobState.INIT).isEmpty());
+        assertEquals(List.of(orphaned.getId()), jobStore.claim("live-node", 10, true).stream().map(Job::getId).toList());
+    }
+
+    @SneakyThrows
+    @Test
+    void testReclaimSkipsExcludedOwner() {
+        TestJob own = new TestJob();
+        jobStore.save(own);
+        assertEquals(1, jobStore.claim("node-1", 1, 1, Map.of(), Duration.ofMillis(1)).size());
+        TestJob other = new TestJob();
+        jobStore.save(other);
+        assertEquals(1, jobStore.claim("node-2", 1, 1, Map.of(), Duration.ofMillis(1)).size());
+
+        Thread.sleep(20);
+        List<Job<?>> reclaimed = jobStore.reclaimExpiredLeases(10, JobState.INIT, "node-1");
+
+        assertEquals(List.of(other.getId()), reclaimed.stream().map(Job::getId).toList());
+        assertEquals(JobState.WAITING, jobStore.get(own.getId()).getState());
+        assertEquals("node-1", jobStore.get(own.getId()).getOwner());
+    }
+
+    @SneakyThrows
+    @Test
+    void testRenewedLeasesAreKept() {
+        jobStore.save(new TestJob());
+        jobStore.save(new TestJob());
+        jobStore.claim("node-1", 2, 2, Map.of(), Duration.ofMillis(50));
+
+        assertEquals(2, jobStore.renewLeases("node-1", Duration.ofMinutes(1)));
+        assertEquals(0, jobStore.renewLeases("node-2", Duration.ofMinutes(1)));
+        Thread.sleep(100);
+
+        assertTrue(jobStore.reclaimExpiredLeases(10, JobState.FAILED).isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> jobStore.reclaimExpiredLeases(10, JobState.SUCCESSFUL));
+    }
+
+    @Test
+    void testPurgeRemovesOldJobsInState() {
+        Instant now = Instant.now();
+        TestJob old = new TestJob();
+        old.setState(JobState.SUCCESSFUL);
+        old.setEndTime(now.minus(Duration.ofDays(2)));
+        jobStore.save(old);
+        TestJob recent = new TestJob();
+        recent.setState(JobState.SUCCESSFUL);
+        recent.setEndTime(now);
+        jobStore.save(recent);
+        TestJob failed = new TestJob();
+        failed.setState(JobState.FAILED);
+        failed.setEndTime(now.minus(Duration.ofDays(2)));
+        jobStore.save(failed);
+
+        assertEquals(1, jobStore.purge(JobState.SUCCESSFUL, now.minus(Duration.ofDays(1)), 10, false));
+        assertEquals(0, jobStore.purge(JobState.SUCCESSFUL, now.minus(Duration.ofDays(1)), 10, false));
+
+        assertNull(jobStore.get(old.getId()));
+        assertNotNull(jobStore.get(recent.getId()));
+        assertNotNull(jobStore.get(failed.getId()));
+        assertEquals(2, jobStore.count());
+        assertThrows(IllegalArgumentException.class, () -> jobStore.purge(JobState.INIT, now, 10, false));
+    }
+
+    @Test
+    void testResultIsStoredApartFromJob() throws Exception {
+        SumTestJob job = new SumTestJob();
+        job.setResult(42);
+        jobStore.save(job);
+        assertNull(jobStore.getResult(job.getId()));
+
+        job.setState(JobState.SUCCESSFUL);
+        jobStore.save(job);
+
+        Integer result = jobStore.getResult(job.getId());
+        assertEquals(42, result);
+        try (InputStream encoded = jobStore.openResult(job.getId())) {
+            assertEquals("42", new String(encoded.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        assertNull(jobStore.openResult(Long.MAX_VALUE));
+
+        jobStore.delete(job.getId());
+        assertNull(jobStore.getResult(job.getId()));
+    }
+
+    @Test
+    void testClaimPrefersHigherPriority() {
+        for (int i = 0; i < 3; i++) {
+            jobStore.save(new TestJob());
+        }
+        TestJob urgent = new TestJob();
+        urgent.setPriority(10);
+        jobStore.save(urgent);
+
+        List<Job<?>> claimed = jobStore.claim("node-1", 1, true);
+
+        assertEquals(List.of(urgent.getId()), claimed.stream().map(Job::getId).toList());
+    }
+
+    @Test
+    void testClaimSharesSlotsAcrossNames() {
+        List<Long> interactiveIds = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            TestJob bulk = new TestJob();
+            bulk.setName("bulk");
+            jobStore.save(bulk);
+        }
+        for (int i = 0; i < 2; i++) {
+            TestJob interactive = new TestJob();
+            interactive.setName("interactive");
+            jobStore.save(interactive);
+            interactiveIds.add(interactive.getId());
+        }
+
+        List<Long> claimedIds = jobStore.claim("node-1", 4, true).stream().map(Job::getId).toList();
+
+        assertEquals(4, claimedIds.size());
+        assertTrue(claimedIds.containsAll(interactiveIds));
+    }
+
+    @Test
+    void testClaimSkipsJobsThatDoNotFitFreeResources() {
+        for (int i = 0; i < 3; i++) {
+            TestJob db = new TestJob();
+            db.setResources(Map.of("db", 1));
+            jobStore.save(db);
+        }
+        TestJob gpu = new TestJob();
+        gpu.setName("render");
+        gpu.setResources(Map.of("gpu", 2));
+        jobStore.save(gpu);
+        TestJob plain = new TestJob();
+        plain.setName("plain");
+        jobStore.save(plain);
+
+        List<Job<?>> claimed = jobStore.claim("node-1", 3, 3, Map.of(), null, Map.of("db", 0, "gpu", 1));
+
+        assertEquals(List.of(plain.getId()), claimed.stream().map(Job::getId).toList());
+        assertEquals(JobState.INIT, jobStore.get(gpu.getId()).getState());
+
+        // Free permits are shared out in dispatch order, and a group stops at its first job that does not fit
+        claimed = jobStore.claim("node-1", 3, 3, Map.of(), null, Map.of("db", 2));
+        assertEquals(2, claimed.stream().filter(job -> job.getResources().containsKey("db")).count());
+        assertEquals(3, claimed.size());
+    }
+
+    @Test
+    void testDeepBacklogDoesNotHideOtherGroups() {
+        List<Job<?>> backlog = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            TestJob bulk = new TestJob();
+            bulk.setName("bulk");
+            backlog.add(bulk);
+        }
+        jobStore.saveAll(backlog);
+        TestJob interactive = new TestJob();
+        interactive.setName("interactive");
+        jobStore.save(interactive);
+
+        List<Job<?>> claimed = jobStore.claim("node-1", 2, true);
+
+        assertEquals(2, claimed.size());
+        assertTrue(claimed.stream().anyMatch(job -> job.getId() == interactive.getId()));
+    }
+
+    @Test
+    void testClaimHonorsGroupWeights() {
+        for (int i = 0; i < 6; i++) {
+            TestJob bulk = new TestJob();
+            bulk.setName("bulk");
+            jobStore.save(bulk);
+
+            TestJob report = new TestJob();
+            report.setName("report");
+            jobStore.save(report);
+        }
+
+        List<Job<?>> claimed = jobStore.claim("node-1", 4, 4, Map.of("bulk", 3));
+
+        assertEquals(3, claimed.stream().filter(j -> "bulk".equals(j.getName())).count());
+        assertEquals(1, claimed.stream().filter(j -> "report".equals(j.getName())).count());
+    }
+
+    @Test
+    void testConcurrentClaimsDoNotOverlap() throws Exception {
+        int jobCount = 50;
+        for (int i = 0; i < jobCount; i++) {
+            jobStore.save(new TestJob());
+        }
+
+        List<Long> claimedIds = Collections.synchronizedList(new ArrayList<>());
+        try (ExecutorService executor = Executors.newFixedThreadPool(4)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                String nodeId = "node-" + i;
+                futures.add(executor.submit(() -> {
+                    List<Job<?>> claimed;
+                    do {
+                        claimed = jobStore.claim(nodeId, 3, true);
+                        claimed.forEach(j -> claimedIds.add(j.getId()));
+                    } while (!claimed.isEmpty());
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+
+        assertEquals(jobCount, claimedIds.size());
+        assertEquals(jobCount, claimedIds.stream().distinct().count());
+    }
+
+    @Test
+    void testGetNextScheduledTime() {
+        assertNull(jobStore.getNextScheduledTime());
+
+        TestJob due = new TestJob();
+        due.setScheduledTime(Instant.now().minusSeconds(60));
+        jobStore.save(due);
+
+        TestJob later = new TestJob();
+        later.setScheduledTime(Instant.now().plusSeconds(120));
+        jobStore.save(later);
+
+        TestJob sooner = new TestJob();
+        sooner.setScheduledTime(Instant.now().plusSeconds(60));
+        jobStore.save(sooner);
+
+        TestJob running = new TestJob();
+        running.setState(JobState.RUNNING);
+        running.setScheduledTime(Instant.now().plusSeconds(30));
+        jobStore.save(running);
+
+        assertEquals(sooner.getScheduledTime().toEpochMilli(), jobStore.getNextScheduledTime().toEpochMilli());
+    }
+
+    @Test
+    void testGetPage() {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            TestJob job = new TestJob();
+            jobStore.save(job);
+            ids.add(job.getId());
+        }
+
+        List<Job<?>> firstPage = jobStore.getPage(0, 2);
+        assertEquals(ids.subList(0, 2), firstPage.stream().map(Job::getId).toList());
+
+        List<Job<?>> secondPage = jobStore.getPage(firstPage.getLast().getId(), 2);
+        assertEquals(ids.subList(2, 4), secondPage.stream().map(Job::getId).toList());
+
+        assertEquals(1, jobStore.getPage(secondPage.getLast().getId(), 2).size());
+        assertTrue(jobStore.getPage(ids.getLast(), 2).isEmpty());
+    }
+
+    @Test
+    void testStream() {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            TestJob job = new TestJob();
+            jobStore.save(job);
+            ids.add(job.getId());
+        }
+
+        try (Stream<Job<?>> jobs = jobStore.stream(3)) {
+            assertEquals(ids, jobs.map(Job::getId).toList());
+        }
+        assertEquals(List.of(ids.getFirst()), jobStore.stream().limit(1).map(Job::getId).toList());
+    }
+
     @Test
     void testGetAllAndCount() {
         jobStore.save(new TestJob());
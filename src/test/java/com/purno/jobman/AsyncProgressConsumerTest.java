@@ -0,0 +1,155 @@
+package com.purno.jobman;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncProgressConsumerTest {
+
+    private static TestJob job(long id, JobState state) {
+        TestJob job = new TestJob();
+        job.setId(id);
+        job.setState(state);
+        return job;
+    }
+
+    @Test
+    @Timeout(10)
+    void testDeliversOnConsumerThread() throws Exception {
+        List<String> threads = new CopyOnWriteArrayList<>();
+        AsyncProgressConsumer consumer = new AsyncProgressConsumer(j -> threads.add(Thread.currentThread().getName()));
+
+        consumer.accept(job(1, JobState.RUNNING));
+        consumer.close();
+
+        assertEquals(1, threads.size());
+        assertTrue(threads.getFirst().startsWith("job-progress-"));
+    }
+
+    @Test
+    @Timeout(10)
+    void testCoalescesEventsPerJob() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<JobState> delivered = new CopyOnWriteArrayList<>();
+        AsyncProgressConsumer consumer = new AsyncProgressConsumer(j -> {
+            awaitQuietly(release);
+            delivered.add(j.getState());
+        });
+
+        // The first event occupies the consumer thread, the rest queue up behind it
+        consumer.accept(job(1, JobState.WAITING));
+        Thread.sleep(50);
+        for (int i = 0; i < 100; i++) {
+            consumer.accept(job(2, JobState.RUNNING));
+        }
+        consumer.accept(job(2, JobState.SUCCESSFUL));
+
+        release.countDown();
+        consumer.close();
+
+        assertEquals(List.of(JobState.WAITING, JobState.SUCCESSFUL), delivered);
+    }
+
+    @Test
+    @Timeout(10)
+    void testDropIntermediateKeepsTerminalEvents() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<Long> delivered = new CopyOnWriteArrayList<>();
+        AsyncProgressConsumer consumer = AsyncProgressConsumer.builder()
+                .consumer(j -> {
+                    awaitQuietly(release);
+                    delivered.add(j.getId());
+                })
+                .capacity(2)
+                .build();
+
+        consumer.accept(job(1, JobState.RUNNING));
+        Thread.sleep(50);
+        consumer.accept(job(2, JobState.RUNNING));
+        consumer.accept(job(3, JobState.RUNNING));
+        consumer.accept(job(4, JobState.RUNNING));
+        consumer.accept(job(5, JobState.FAILED));
+
+        release.countDown();
+        consumer.close();
+
+        assertEquals(List.of(1L, 2L, 3L, 5L), delivered);
+        assertEquals(1, consumer.getDroppedEvents());
+    }
+
+    @Test
+    @Timeout(10)
+    void testBlockNeverDrops() throws Exception {
+        List<Long> delivered = new CopyOnWriteArrayList<>();
+        AsyncProgressConsumer consumer = AsyncProgressConsumer.builder()
+                .consumer(j -> {
+                    sleepQuietly(1);
+                    delivered.add(j.getId());
+                })
+                .capacity(1)
+                .backpressurePolicy(AsyncProgressConsumer.BackpressurePolicy.BLOCK)
+                .build();
+
+        for (int i = 1; i <= 50; i++) {
+            consumer.accept(job(i, JobState.RUNNING));
+        }
+        consumer.close();
+
+        assertEquals(50, delivered.size());
+        assertEquals(0, consumer.getDroppedEvents());
+    }
+
+    @Test
+    @Timeout(10)
+    void testSampleLimitsIntermediateEvents() throws Exception {
+        List<JobState> delivered = new CopyOnWriteArrayList<>();
+        AsyncProgressConsumer consumer = AsyncProgressConsumer.builder()
+                .consumer(j -> delivered.add(j.getState()))
+                .backpressurePolicy(AsyncProgressConsumer.BackpressurePolicy.SAMPLE)
+                .sampleInterval(Duration.ofMinutes(1))
+                .build();
+
+        for (int i = 0; i < 20; i++) {
+            consumer.accept(job(1, JobState.RUNNING));
+            Thread.sleep(5);
+        }
+        consumer.accept(job(1, JobState.SUCCESSFUL));
+        consumer.close();
+
+        assertEquals(List.of(JobState.RUNNING, JobState.SUCCESSFUL), delivered);
+    }
+
+    @Test
+    @Timeout(10)
+    void testDeliversSynchronouslyAfterClose() throws Exception {
+        List<String> threads = new CopyOnWriteArrayList<>();
+        AsyncProgressConsumer consumer = new AsyncProgressConsumer(j -> threads.add(Thread.currentThread().getName()));
+        consumer.close();
+
+        consumer.accept(job(1, JobState.SUCCESSFUL));
+
+        assertEquals(List.of(Thread.currentThread().getName()), threads);
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.purno.jobman;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CachingJobStoreTest extends AbstractJobStoreTest {
+
+    @Override
+    protected JobStore createJobStore() {
+        return new CachingJobStore(new InMemoryJobStore());
+    }
+
+    @Test
+    void testRepeatedGetIsServedFromCache() {
+        CachingJobStore store = (CachingJobStore) jobStore;
+        TestJob job = new TestJob();
+        store.save(job);
+
+        store.get(job.getId());
+        store.get(job.getId());
+        store.get(job.getId());
+
+        assertEquals(2, store.getHits());
+        assertEquals(1, store.getMisses());
+        assertEquals(2.0 / 3, store.getHitRate(), 0.001);
+    }
+
+    @Test
+    void testWritesInvalidateCachedJob() {
+        CachingJobStore store = (CachingJobStore) jobStore;
+        TestJob job = new TestJob();
+        store.save(job);
+        store.get(job.getId());
+
+        job.setState(JobState.RUNNING);
+        store.save(job);
+        assertEquals(JobState.RUNNING, store.get(job.getId()).getState());
+        assertEquals(2, store.getMisses());
+
+        store.delete(job.getId());
+        assertNull(store.get(job.getId()));
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    void testFailedSaveInvalidatesCachedJob() {
+        AtomicBoolean failing = new AtomicBoolean();
+        CachingJobStore store = new CachingJobStore(new InMemoryJobStore() {
+            @Override
+            public void save(Job<?> job) {
+                if (failing.get()) {
+                    throw new IllegalStateException("Store unavailable");
+                }
+                super.save(job);
+            }
+        });
+        TestJob job = new TestJob();
+        store.save(job);
+        store.get(job.getId()).setMessage("Not saved");
+
+        failing.set(true);
+        assertThrows(IllegalStateException.class, () -> store.save(store.get(job.getId())));
+
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    void testOnlyWritesToTheLoadedJobStopItBeingCached() {
+        AtomicReference<Runnable> duringGet = new AtomicReference<>();
+        CachingJobStore store = new CachingJobStore(new InMemoryJobStore() {
+            @Override
+            public Job<?> get(long jobId) {
+                Job<?> job = super.get(jobId);
+                Runnable write = duringGet.getAndSet(null);
+                if (write != null) {
+                    write.run();
+                }
+                return job;
+            }
+        });
+        TestJob loaded = new TestJob();
+        TestJob other = new TestJob();
+        store.save(loaded);
+        store.save(other);
+
+        duringGet.set(() -> store.save(other));
+        store.get(loaded.getId());
+        assertEquals(1, store.size());
+
+        store.save(loaded);
+        duringGet.set(() -> store.save(loaded));
+        store.get(loaded.getId());
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    void testOnlyConfiguredStatesAreCached() {
+        CachingJobStore store = CachingJobStore.builder()
+                .delegate(new InMemoryJobStore())
+                .cachedStates(Set.of(JobState.INIT, JobState.WAITING, JobState.RUNNING))
+                .build();
+        TestJob active = new TestJob();
+        store.save(active);
+        TestJob finished = new TestJob();
+        finished.setState(JobState.SUCCESSFUL);
+        store.save(finished);
+
+        store.get(active.getId());
+        store.get(finished.getId());
+
+        assertEquals(1, store.size());
+        assertNotNull(store.get(finished.getId()));
+        assertEquals(0, store.getHits());
+    }
+
+    @Test
+    void testLeastRecentlyUsedJobIsEvicted() {
+        CachingJobStore store = CachingJobStore.builder().delegate(new InMemoryJobStore()).maxSize(2).build();
+        TestJob first = new TestJob();
+        TestJob second = new TestJob();
+        TestJob third = new TestJob();
+        store.save(first);
+        store.save(second);
+        store.save(third);
+
+        store.get(first.getId());
+        store.get(second.getId());
+        store.get(first.getId());
+        store.get(third.getId());
+        store.get(second.getId());
+
+        assertEquals(2, store.size());
+        assertEquals(1, store.getHits());
+        assertEquals(4, store.getMisses());
+    }
+}
@@ -0,0 +1,36 @@
+package com.purno.jobman;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// Works through its steps without reacting to interrupts, checkpointing after each one
+public class CheckpointTestJob extends AbstractJob<Void> {
+
+    @Getter
+    @Setter
+    private int steps;
+
+    @Getter
+    @Setter
+    private int completedSteps;
+
+    @Getter
+    @Setter
+    private int resumedFrom;
+
+    @Override
+    public void run(JobContext context) {
+        resumedFrom = completedSteps;
+        while (completedSteps < steps) {
+            if (context.isStopRequested()) {
+                return;
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(20));
+            completedSteps++;
+            context.checkpoint();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.purno.jobman;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CronExpressionTest {
+    private static final ZoneId UTC = ZoneId.of("UTC");
+
+    private static ZonedDateTime time(int year, int month, int day, int hour, int minute, int second) {
+        return ZonedDateTime.of(year, month, day, hour, minute, second, 0, UTC);
+    }
+
+    @Test
+    void testEveryFifteenMinutes() {
+        CronExpression cron = new CronExpression("*/15 * * * *");
+
+        assertEquals(time(2024, 3, 1, 10, 15, 0), cron.next(time(2024, 3, 1, 10, 0, 0)));
+        assertEquals(time(2024, 3, 1, 11, 0, 0), cron.next(time(2024, 3, 1, 10, 45, 0)));
+    }
+
+    @Test
+    void testRangesListsAndNames() {
+        CronExpression cron = new CronExpression("30 9 * JAN,JUN MON-FRI");
+
+        // 2024-01-06 is a Saturday
+        assertEquals(time(2024, 1, 8, 9, 30, 0), cron.next(time(2024, 1, 6, 0, 0, 0)));
+        // Skips to June after the last January weekday
+        assertEquals(time(2024, 6, 3, 9, 30, 0), cron.next(time(2024, 1, 31, 9, 30, 0)));
+    }
+
+    @Test
+    void testDayOfMonthOrDayOfWeek() {
+        CronExpression cron = new CronExpression("0 0 13 * 5");
+
+        // Fridays and the 13th both match when both fields are restricted
+        assertEquals(time(2024, 9, 6, 0, 0, 0), cron.next(time(2024, 9, 1, 0, 0, 0)));
+        assertEquals(time(2024, 9, 13, 0, 0, 0), cron.next(time(2024, 9, 6, 0, 0, 0)));
+    }
+
+    @Test
+    void testSecondsAndMacros() {
+        assertEquals(time(2024, 3, 1, 10, 0, 40), new CronExpression("*/20 * * * * *").next(time(2024, 3, 1, 10, 0, 21)));
+        assertEquals(time(2025, 1, 1, 0, 0, 0), new CronExpression("@yearly").next(time(2024, 3, 1, 10, 0, 0)));
+        assertEquals(time(2024, 3, 3, 0, 0, 0), new CronExpression("@weekly").next(time(2024, 3, 1, 10, 0, 0)));
+    }
+
+    @Test
+    void testImpossibleDateHasNoNextTime() {
+        assertNull(new CronExpression("0 0 31 2 *").next(time(2024, 1, 1, 0, 0, 0)));
+    }
+
+    @Test
+    void testInvalidExpressions() {
+        assertThrows(IllegalArgumentException.class, () -> new CronExpression("* * *"));
+        assertThrows(IllegalArgumentException.class, () -> new CronExpression("60 * * * *"));
+        assertThrows(IllegalArgumentException.class, () -> new CronExpression("* * * FOO *"));
+    }
+}
@@ -0,0 +1,58 @@
+package com.purno.jobman;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HierarchicalTimingWheelTest {
+
+    @Test
+    void testTimersFireOnTimeAcrossWheels() {
+        HierarchicalTimingWheel<Long> wheel = new HierarchicalTimingWheel<>(10, 8, 0);
+        long[] deadlines = {5, 10, 79, 80, 81, 500, 641, 5_000, 123_456};
+        for (long deadline : deadlines) {
+            wheel.schedule(deadline, deadline);
+        }
+
+        Map<Long, Long> firedAt = new TreeMap<>();
+        for (long now = 0; now <= 130_000; now += 10) {
+            long time = now;
+            wheel.advanceTo(now, deadline -> firedAt.put(deadline, time));
+        }
+
+        assertEquals(deadlines.length, firedAt.size());
+        firedAt.forEach((deadline, time) -> {
+            assertTrue(time >= deadline, deadline + " fired early at " + time);
+            assertTrue(time < deadline + 10, deadline + " fired late at " + time);
+        });
+    }
+
+    @Test
+    void testOverdueTimersFireOnNextAdvance() {
+        HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(10, 8, 1_000);
+        wheel.schedule("overdue", 500);
+
+        List<String> fired = new ArrayList<>();
+        wheel.advanceTo(1_000, fired::add);
+
+        assertEquals(List.of("overdue"), fired);
+    }
+
+    @Test
+    void testCancelledTimersDoNotFire() {
+        HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(10, 8, 0);
+        HierarchicalTimingWheel.Timer<String> cancelled = wheel.schedule("cancelled", 1_000);
+        wheel.schedule("kept", 1_000);
+        cancelled.cancel();
+
+        List<String> fired = new ArrayList<>();
+        wheel.advanceTo(2_000, fired::add);
+
+        assertEquals(List.of("kept"), fired);
+    }
+}
@@ -1,9 +1,43 @@
 package com.purno.jobman;
 
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
 class InMemoryJobStoreTest extends AbstractJobStoreTest {
 
     @Override
     protected JobStore createJobStore() {
         return new InMemoryJobStore();
     }
-}
\ No newline at end of file
+
+    @Test
+    void testPurgeArchivesToFile(@TempDir Path dir) throws Exception {
+        Path archiveFile = dir.resolve("archive.jsonl");
+        InMemoryJobStore store = new InMemoryJobStore(archiveFile);
+        TestJob job = new TestJob();
+        job.setName("Archived Job");
+        job.setState(JobState.CANCELED);
+        job.setEndTime(Instant.now().minus(Duration.ofHours(2)));
+        store.save(job);
+
+        assertEquals(1, store.purge(JobState.CANCELED, Instant.now().minus(Duration.ofHours(1)), 10, true));
+
+        assertNull(store.get(job.getId()));
+        List<String> lines = Files.readAllLines(archiveFile);
+        assertEquals(1, lines.size());
+        assertTrue(lines.getFirst().startsWith(TestJob.class.getName() + " {"));
+        assertTrue(lines.getFirst().contains("Archived Job"));
+
+        // Archiving needs somewhere to write to
+        jobStore.save(job);
+        assertThrows(IllegalStateException.class, () -> jobStore.purge(JobState.CANCELED, Instant.now(), 10, true));
+    }
+}
@@ -0,0 +1,9 @@
+package com.purno.jobman;
+
+class InstrumentedJobStoreTest extends AbstractJobStoreTest {
+
+    @Override
+    protected JobStore createJobStore() {
+        return new InstrumentedJobStore(new InMemoryJobStore(), new SimpleJobMetrics());
+    }
+}
@@ -0,0 +1,84 @@
+package com.purno.jobman;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JacksonJobCodecTest {
+
+    private static TestJob createJob() {
+        TestJob job = new TestJob();
+        job.setId(42);
+        job.setName("Codec Job");
+        job.setState(JobState.RUNNING);
+        job.setScheduledTime(Instant.now().truncatedTo(ChronoUnit.MILLIS));
+        job.setSleepTime(Duration.ofSeconds(3));
+        return job;
+    }
+
+    private static void assertSameJob(TestJob expected, Job<?> actual) {
+        TestJob decoded = assertInstanceOf(TestJob.class, actual);
+        assertEquals(expected.getId(), decoded.getId());
+        assertEquals(expected.getName(), decoded.getName());
+        assertEquals(expected.getState(), decoded.getState());
+        assertEquals(expected.getScheduledTime(), decoded.getScheduledTime());
+        assertEquals(expected.getSleepTime(), decoded.getSleepTime());
+    }
+
+    @Test
+    void testResultRoundTrip() throws Exception {
+        JacksonJobCodec codec = new JacksonJobCodec(false);
+        SumTestJob job = new SumTestJob();
+        job.setResult(7);
+
+        byte[] data = codec.encodeResult(job);
+
+        assertEquals("7", new String(data, StandardCharsets.UTF_8));
+        assertEquals(7, codec.decodeResult(SumTestJob.class.getName(), data));
+    }
+
+    @Test
+    void testJsonRoundTrip() throws Exception {
+        JacksonJobCodec codec = new JacksonJobCodec(false);
+        TestJob job = createJob();
+
+        byte[] data = codec.encode(job);
+
+        assertEquals('{', data[0]);
+        assertSameJob(job, codec.decode(TestJob.class.getName(), data));
+    }
+
+    @Test
+    void testBinaryRoundTrip() throws Exception {
+        JacksonJobCodec codec = new JacksonJobCodec(true);
+        TestJob job = createJob();
+
+        byte[] data = codec.encode(job);
+
+        assertNotEquals('{', data[0]);
+        assertSameJob(job, codec.decode(TestJob.class.getName(), data));
+    }
+
+    @Test
+    void testBinaryCodecReadsJson() throws Exception {
+        TestJob job = createJob();
+        byte[] json = new JacksonJobCodec(false).encode(job);
+
+        Job<?> decoded = new JacksonJobCodec(true).decode(TestJob.class.getName(), json);
+
+        assertSameJob(job, decoded);
+        assertTrue(new String(json, StandardCharsets.UTF_8).contains("Codec Job"));
+    }
+
+    @Test
+    void testUnknownClass() {
+        JacksonJobCodec codec = new JacksonJobCodec(false);
+
+        assertThrows(IllegalStateException.class, () -> codec.decode("com.purno.jobman.MissingJob", "{}".getBytes()));
+    }
+}
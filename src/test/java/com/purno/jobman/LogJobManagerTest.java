@@ -0,0 +1,25 @@
+package com.purno.jobman;
+
+import org.junit.jupiter.api.AfterEach;
+
+import java.io.IOException;
+import java.nio.file.Files;
+
+class LogJobManagerTest extends AbstractJobManagerTest {
+    private LogJobStore logJobStore;
+
+    @Override
+    protected JobStore createJobStore() {
+        try {
+            logJobStore = new LogJobStore(Files.createTempDirectory("job-log"));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return logJobStore;
+    }
+
+    @AfterEach
+    void closeStore() {
+        logJobStore.close();
+    }
+}
@@ -0,0 +1,153 @@
+package com.purno.jobman;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogJobStoreTest extends AbstractJobStoreTest {
+    private Path directory;
+
+    @Override
+    protected JobStore createJobStore() {
+        try {
+            directory = Files.createTempDirectory("job-log");
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return new LogJobStore(directory);
+    }
+
+    @AfterEach
+    void tearDown() {
+        ((LogJobStore) jobStore).close();
+    }
+
+    private LogJobStore reopen() {
+        ((LogJobStore) jobStore).close();
+        jobStore = new LogJobStore(directory);
+        return (LogJobStore) jobStore;
+    }
+
+    private List<String> files(String suffix) throws IOException {
+        try (Stream<Path> paths = Files.list(directory)) {
+            return paths.map(path -> path.getFileName().toString()).filter(name -> name.endsWith(suffix)).sorted().toList();
+        }
+    }
+
+    @Test
+    void testJobsSurviveRestart() {
+        TestJob parent = new TestJob();
+        parent.setName("Parent");
+        jobStore.save(parent);
+        SumTestJob child = new SumTestJob();
+        child.setDependsOn(List.of(parent.getId()));
+        jobStore.save(child);
+        child.setState(JobState.SUCCESSFUL);
+        child.setResult(5);
+        jobStore.save(child);
+        TestJob deleted = new TestJob();
+        jobStore.save(deleted);
+        jobStore.delete(deleted.getId());
+
+        LogJobStore reopened = reopen();
+
+        assertEquals(2, reopened.count());
+        assertEquals("Parent", reopened.get(parent.getId()).getName());
+        assertEquals(JobState.SUCCESSFUL, reopened.get(child.getId()).getState());
+        Integer result = reopened.getResult(child.getId());
+        assertEquals(5, result);
+        assertEquals(List.of(child.getId()), reopened.getDependents(parent.getId()).stream().map(Job::getId).toList());
+        assertNull(reopened.get(deleted.getId()));
+
+        TestJob added = new TestJob();
+        reopened.save(added);
+        assertTrue(added.getId() > deleted.getId());
+    }
+
+    @Test
+    void testResultIsWrittenOnce() throws IOException {
+        SumTestJob job = new SumTestJob();
+        job.setState(JobState.SUCCESSFUL);
+        job.setResult(987654321);
+        jobStore.save(job);
+
+        String log = new String(Files.readAllBytes(directory.resolve(files(".log").getFirst())), StandardCharsets.ISO_8859_1);
+        assertEquals(1, log.split("987654321", -1).length - 1);
+
+        Integer result = reopen().getResult(job.getId());
+        assertEquals(987654321, result);
+    }
+
+    @Test
+    void testClaimedJobsAreReclaimedAfterRestart() {
+        TestJob job = new TestJob();
+        jobStore.save(job);
+        assertEquals(1, jobStore.claim("node-1", 1, true).size());
+
+        LogJobStore reopened = reopen();
+
+        assertEquals(JobState.WAITING, reopened.get(job.getId()).getState());
+        assertEquals(List.of(job.getId()), reopened.reclaimExpiredLeases(10, JobState.INIT).stream().map(Job::getId).toList());
+        assertEquals(1, reopened.claim("node-2", 1, true).size());
+    }
+
+    @Test
+    void testSnapshotReplacesOlderSegments() throws Exception {
+        ((LogJobStore) jobStore).close();
+        jobStore = LogJobStore.builder()
+                .directory(directory)
+                .segmentSize(4096)
+                .snapshotThreshold(8192)
+                .build();
+
+        for (int i = 0; i < 200; i++) {
+            TestJob job = new TestJob();
+            job.setName("Job " + i);
+            jobStore.save(job);
+        }
+        Thread.sleep(200);
+
+        assertFalse(files(".dat").isEmpty());
+        assertTrue(files(".log").size() < 10, "segments " + files(".log"));
+
+        LogJobStore reopened = reopen();
+        assertEquals(200, reopened.count());
+        assertEquals("Job 199", reopened.get(200).getName());
+    }
+
+    @Test
+    void testTornRecordAtEndIsIgnored() throws Exception {
+        TestJob kept = new TestJob();
+        kept.setName("Kept");
+        jobStore.save(kept);
+        TestJob torn = new TestJob();
+        torn.setName("Torn");
+        jobStore.save(torn);
+
+        // Simulate a crash halfway through writing the last record: the store is abandoned without closing
+        Path segment = directory.resolve(files(".log").getLast());
+        byte[] data = Files.readAllBytes(segment);
+        int end = data.length;
+        while (end > 0 && data[end - 1] == 0) {
+            end--;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            file.seek(end - 10);
+            file.write(new byte[10]);
+        }
+
+        jobStore = new LogJobStore(directory);
+
+        assertEquals("Kept", jobStore.get(kept.getId()).getName());
+        assertNull(jobStore.get(torn.getId()));
+    }
+}
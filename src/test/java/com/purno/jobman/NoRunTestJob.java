@@ -0,0 +1,5 @@
+package com.purno.jobman;
+
+// Implements neither run() nor run(JobContext)
+public class NoRunTestJob extends AbstractJob<Void> {
+}
@@ -0,0 +1,22 @@
+package com.purno.jobman;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.SneakyThrows;
+
+public class ProgressTestJob extends AbstractJob<Void> {
+
+    @Getter
+    @Setter
+    private int steps;
+
+    @SneakyThrows
+    @Override
+    public void run(JobContext context) {
+        for (int i = 1; i <= steps; i++) {
+            Thread.sleep(1);
+            context.increment("rows");
+            context.update(100.0 * i / steps, "Processed " + i + " of " + steps);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.purno.jobman;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResourcePoolsTest {
+
+    @Test
+    void testAcquireIsAllOrNothing() {
+        ResourcePools pools = new ResourcePools(Map.of("cpu", 4, "db", 1));
+
+        ResourcePools.Permit first = pools.tryAcquire(Map.of("cpu", 2, "db", 1));
+        assertNotNull(first);
+        assertNull(pools.tryAcquire(Map.of("cpu", 1, "db", 1)));
+
+        assertEquals(2, pools.getAvailable("cpu"));
+        assertEquals(0, pools.getAvailable("db"));
+
+        assertTrue(first.release());
+        assertEquals(4, pools.getAvailable("cpu"));
+        assertEquals(1, pools.getAvailable("db"));
+    }
+
+    @Test
+    void testReleaseHappensOnce() {
+        ResourcePools pools = new ResourcePools(Map.of("cpu", 2));
+        ResourcePools.Permit permit = pools.tryAcquire(Map.of("cpu", 2));
+
+        assertTrue(permit.release());
+        assertFalse(permit.release());
+        assertEquals(2, pools.getAvailable("cpu"));
+    }
+
+    @Test
+    void testUnknownPoolsAreUnlimited() {
+        ResourcePools pools = new ResourcePools(Map.of("cpu", 1));
+
+        assertNotNull(pools.tryAcquire(Map.of("gpu", 100)));
+        assertTrue(pools.canEverFit(Map.of("gpu", 100)));
+        assertFalse(pools.canEverFit(Map.of("cpu", 2)));
+    }
+
+    @Test
+    void testConcurrentAcquireNeverOversubscribes() throws Exception {
+        ResourcePools pools = new ResourcePools(Map.of("cpu", 5, "db", 3));
+        AtomicInteger cpuInUse = new AtomicInteger();
+        AtomicInteger maxCpuInUse = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    ResourcePools.Permit permit = pools.tryAcquire(Map.of("cpu", 2, "db", 1));
+                    if (permit != null) {
+                        maxCpuInUse.accumulateAndGet(cpuInUse.addAndGet(2), Math::max);
+                        cpuInUse.addAndGet(-2);
+                        permit.release();
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        assertTrue(maxCpuInUse.get() <= 5);
+        assertEquals(5, pools.getAvailable("cpu"));
+        assertEquals(3, pools.getAvailable("db"));
+    }
+}
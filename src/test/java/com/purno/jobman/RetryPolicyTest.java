@@ -0,0 +1,48 @@
+package com.purno.jobman;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RetryPolicyTest {
+
+    @Test
+    void testExponentialBackoffIsCapped() {
+        RetryPolicy policy = RetryPolicy.builder()
+                .initialDelay(Duration.ofSeconds(1))
+                .maxDelay(Duration.ofSeconds(10))
+                .multiplier(3)
+                .jitter(0.0)
+                .build();
+
+        assertEquals(Duration.ofSeconds(1), policy.nextDelay(1));
+        assertEquals(Duration.ofSeconds(3), policy.nextDelay(2));
+        assertEquals(Duration.ofSeconds(9), policy.nextDelay(3));
+        assertEquals(Duration.ofSeconds(10), policy.nextDelay(4));
+    }
+
+    @Test
+    void testJitterStaysWithinBounds() {
+        RetryPolicy policy = RetryPolicy.builder()
+                .initialDelay(Duration.ofSeconds(8))
+                .jitter(0.5)
+                .build();
+
+        for (int i = 0; i < 100; i++) {
+            Duration delay = policy.nextDelay(1);
+            assertTrue(delay.compareTo(Duration.ofSeconds(4)) >= 0, delay.toString());
+            assertTrue(delay.compareTo(Duration.ofSeconds(8)) <= 0, delay.toString());
+        }
+    }
+
+    @Test
+    void testCanRetry() {
+        RetryPolicy policy = RetryPolicy.builder().maxAttempts(3).build();
+
+        assertTrue(policy.canRetry(1));
+        assertTrue(policy.canRetry(2));
+        assertFalse(policy.canRetry(3));
+    }
+}
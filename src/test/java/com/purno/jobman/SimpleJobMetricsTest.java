@@ -0,0 +1,51 @@
+package com.purno.jobman;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SimpleJobMetricsTest {
+
+    @Test
+    void testCounters() {
+        SimpleJobMetrics metrics = new SimpleJobMetrics();
+        metrics.incrementCounter("jobs", "a");
+        metrics.incrementCounter("jobs", "a");
+        metrics.incrementCounter("jobs", null);
+
+        assertEquals(2, metrics.getCounter("jobs", "a"));
+        assertEquals(1, metrics.getCounter("jobs", null));
+        assertEquals(0, metrics.getCounter("jobs", "b"));
+    }
+
+    @Test
+    void testGauges() {
+        SimpleJobMetrics metrics = new SimpleJobMetrics();
+        AtomicInteger value = new AtomicInteger(3);
+        metrics.registerGauge("depth", value::get);
+        value.set(7);
+
+        assertEquals(7, metrics.getGauge("depth").intValue());
+        assertNull(metrics.getGauge("missing"));
+    }
+
+    @Test
+    void testLatencyPercentiles() {
+        SimpleJobMetrics metrics = new SimpleJobMetrics();
+        for (int i = 1; i <= 100; i++) {
+            metrics.recordLatency("latency", null, i * 1000L);
+        }
+
+        SimpleJobMetrics.Histogram histogram = metrics.getLatency("latency", null);
+        assertEquals(100, histogram.getCount());
+        assertEquals(100_000, histogram.getMaxNanos());
+        assertEquals(50_500, histogram.getMeanNanos(), 0.001);
+
+        // Buckets are powers of two, so percentiles are upper bounds within a factor of two
+        long p50 = histogram.getPercentileNanos(50);
+        assertTrue(p50 >= 50_000 && p50 < 100_000, "p50 was " + p50);
+        assertEquals(100_000, histogram.getPercentileNanos(100));
+    }
+}
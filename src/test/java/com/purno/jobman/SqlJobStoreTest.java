@@ -2,8 +2,18 @@ package com.purno.jobman;
 
 import org.h2.jdbcx.JdbcDataSource;
 import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.Statement;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
 
 class SqlJobStoreTest extends AbstractJobStoreTest {
     private JdbcDataSource dataSource;
@@ -25,6 +35,209 @@ class SqlJobStoreTest extends AbstractJobStoreTest {
         try (Connection conn = dataSource.getConnection();
              Statement stmt = conn.createStatement()) {
             stmt.execute("DROP TABLE IF EXISTS jobs");
+            stmt.execute("DROP TABLE IF EXISTS job_dependencies");
+            stmt.execute("DROP TABLE IF EXISTS jobs_archive");
+        }
+    }
+
+    private String readJobJson(long jobId) throws Exception {
+        return readColumn(jobId, "job_json");
+    }
+
+    private String readColumn(long jobId, String column) throws Exception {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement("SELECT " + column + " FROM jobs WHERE id = ?")) {
+            ps.setLong(1, jobId);
+            try (ResultSet rs = ps.executeQuery()) {
+                assertTrue(rs.next());
+                return rs.getString(1);
+            }
+        }
+    }
+
+    @Test
+    void testStateTransitionsDoNotRewritePayload() throws Exception {
+        TestJob job = new TestJob();
+        job.setName("Payload Job");
+        jobStore.save(job);
+
+        // Change the stored payload behind the store's back, a narrow update must leave it alone
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("UPDATE jobs SET job_json = REPLACE(job_json, 'Payload Job', 'Marker Job')");
+        }
+
+        job.setState(JobState.RUNNING);
+        job.setMessage("Running");
+        jobStore.save(job);
+
+        assertTrue(readJobJson(job.getId()).contains("Marker Job"));
+        Job<?> retrieved = jobStore.get(job.getId());
+        assertEquals(JobState.RUNNING, retrieved.getState());
+        assertEquals("Running", retrieved.getMessage());
+
+        job.setName("Renamed Job");
+        jobStore.save(job);
+
+        assertTrue(readJobJson(job.getId()).contains("Renamed Job"));
+    }
+
+    @Test
+    void testDispatchIndexesAreCreated() throws Exception {
+        jobStore.count();
+
+        Set<String> indexes = new HashSet<>();
+        try (Connection conn = dataSource.getConnection();
+             ResultSet rs = conn.getMetaData().getIndexInfo(null, null, "JOBS", false, false)) {
+            while (rs.next()) {
+                indexes.add(rs.getString("INDEX_NAME").toLowerCase());
+            }
         }
+
+        assertTrue(indexes.contains("idx_jobs_dispatch_group"));
+        assertFalse(indexes.contains("idx_jobs_dispatch"));
+        assertFalse(indexes.contains("idx_jobs_dispatch_order"));
+        assertTrue(indexes.contains("idx_jobs_schedule"));
+    }
+
+    @Test
+    void testResultIsNotKeptInPayload() throws Exception {
+        SumTestJob job = new SumTestJob();
+        job.setResult(42);
+        job.setState(JobState.SUCCESSFUL);
+        jobStore.save(job);
+
+        assertNull(jobStore.get(job.getId()).getResult());
+        assertFalse(readJobJson(job.getId()).contains("\"result\""));
+        Integer result = jobStore.getResult(job.getId());
+        assertEquals(42, result);
+    }
+
+    @Test
+    void testLegacyResultIsReadFromPayload() throws Exception {
+        SumTestJob job = new SumTestJob();
+        job.setState(JobState.SUCCESSFUL);
+        jobStore.save(job);
+        assertNull(jobStore.getResult(job.getId()));
+
+        // Rows written before job_results existed carry the result in job_json
+        String json = readJobJson(job.getId());
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement("UPDATE jobs SET job_json = ? WHERE id = ?")) {
+            ps.setString(1, "{\"result\":7," + json.substring(1));
+            ps.setLong(2, job.getId());
+            ps.executeUpdate();
+        }
+
+        Integer result = jobStore.getResult(job.getId());
+        assertEquals(7, result);
+    }
+
+    @Test
+    void testPurgeArchivesToTable() {
+        TestJob job = new TestJob();
+        job.setName("Archived Job");
+        job.setState(JobState.SUCCESSFUL);
+        job.setEndTime(Instant.now().minus(Duration.ofDays(2)));
+        jobStore.save(job);
+
+        assertEquals(1, jobStore.purge(JobState.SUCCESSFUL, Instant.now().minus(Duration.ofDays(1)), 10, true));
+
+        assertNull(jobStore.get(job.getId()));
+        Job<?> archived = ((SqlJobStore) jobStore).getArchived(job.getId());
+        assertEquals("Archived Job", archived.getName());
+        assertEquals(JobState.SUCCESSFUL, archived.getState());
+    }
+
+    @Test
+    void testWriteBehindCoalescesUpdates() throws Exception {
+        try (SqlJobStore store = SqlJobStore.builder()
+                .dataSource(dataSource)
+                .writeBehindBatchSize(100)
+                .writeBehindFlushInterval(Duration.ofMinutes(1))
+                .build()) {
+            TestJob job = new TestJob();
+            store.save(job);
+
+            job.setState(JobState.WAITING);
+            store.save(job);
+            job.setState(JobState.RUNNING);
+            job.setMessage("Running");
+            store.save(job);
+
+            assertEquals("INIT", readColumn(job.getId(), "state"));
+            assertEquals(JobState.RUNNING, store.get(job.getId()).getState());
+            assertTrue(store.getForRunningNow(true).isEmpty());
+            // The dispatcher asks for the next due time on every tick, that must not drain the buffer
+            store.getNextScheduledTime();
+            assertEquals("INIT", readColumn(job.getId(), "state"));
+
+            store.flush();
+
+            assertEquals("RUNNING", readColumn(job.getId(), "state"));
+            assertEquals("Running", readColumn(job.getId(), "message"));
+        }
+    }
+
+    @Test
+    void testWriteBehindFlushesTerminalStatesWhenAsked() throws Exception {
+        try (SqlJobStore store = SqlJobStore.builder()
+                .dataSource(dataSource)
+                .writeBehindBatchSize(100)
+                .writeBehindFlushInterval(Duration.ofMinutes(1))
+                .syncTerminalStates(true)
+                .build()) {
+            TestJob job = new TestJob();
+            store.save(job);
+
+            job.setState(JobState.RUNNING);
+            store.save(job);
+            assertEquals("INIT", readColumn(job.getId(), "state"));
+
+            job.setState(JobState.SUCCESSFUL);
+            store.save(job);
+            assertEquals("SUCCESSFUL", readColumn(job.getId(), "state"));
+        }
+    }
+
+    @Test
+    void testWriteBehindFlushesOnClose() throws Exception {
+        TestJob job = new TestJob();
+        try (SqlJobStore store = SqlJobStore.builder()
+                .dataSource(dataSource)
+                .writeBehindBatchSize(100)
+                .writeBehindFlushInterval(Duration.ofMinutes(1))
+                .build()) {
+            store.save(job);
+            job.setState(JobState.FAILED);
+            store.save(job);
+        }
+
+        assertEquals("FAILED", readColumn(job.getId(), "state"));
+    }
+
+    @Test
+    void testBinaryPayload() throws Exception {
+        TestJob jsonJob = new TestJob();
+        jsonJob.setName("Json Job");
+        jobStore.save(jsonJob);
+
+        SqlJobStore binaryStore = SqlJobStore.builder()
+                .dataSource(dataSource)
+                .binaryPayload(true)
+                .build();
+
+        TestJob binaryJob = new TestJob();
+        binaryJob.setName("Binary Job");
+        binaryJob.setSleepTime(Duration.ofSeconds(5));
+        binaryStore.save(binaryJob);
+
+        assertEquals("", readJobJson(binaryJob.getId()));
+        assertEquals("Binary Job", binaryStore.get(binaryJob.getId()).getName());
+        assertEquals(Duration.ofSeconds(5), ((TestJob) binaryStore.get(binaryJob.getId())).getSleepTime());
+
+        // Rows written as JSON stay readable after switching to the binary format, and vice versa
+        assertEquals("Json Job", binaryStore.get(jsonJob.getId()).getName());
+        assertEquals("Binary Job", jobStore.get(binaryJob.getId()).getName());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,39 @@
+package com.purno.jobman;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.time.Duration;
+
+class SqlWriteBehindJobManagerTest extends AbstractJobManagerTest {
+    private JdbcDataSource dataSource;
+    private SqlJobStore sqlJobStore;
+
+    @Override
+    protected JobStore createJobStore() {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:testdb_write_behind;DB_CLOSE_DELAY=-1");
+        dataSource.setUser("sa");
+        dataSource.setPassword("");
+
+        sqlJobStore = SqlJobStore.builder()
+                .dataSource(dataSource)
+                .writeBehindBatchSize(50)
+                .writeBehindFlushInterval(Duration.ofMillis(20))
+                .build();
+        return sqlJobStore;
+    }
+
+    @AfterEach
+    void cleanUp() throws Exception {
+        sqlJobStore.close();
+
+        // Drop the table to clean up between tests
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS jobs");
+        }
+    }
+}
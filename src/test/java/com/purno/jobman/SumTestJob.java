@@ -0,0 +1,21 @@
+package com.purno.jobman;
+
+import lombok.Getter;
+import lombok.Setter;
+
+public class SumTestJob extends AbstractJob<Integer> {
+
+    @Getter
+    @Setter
+    private int value;
+
+    @Override
+    public void run(JobContext context) {
+        int sum = value;
+        for (long dependency : getDependsOn()) {
+            Integer result = context.getDependencyResult(dependency);
+            sum += result;
+        }
+        setResult(sum);
+    }
+}
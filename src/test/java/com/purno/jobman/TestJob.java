@@ -12,11 +12,18 @@ public class TestJob extends AbstractJob<Void> {
     @Setter
     private Duration sleepTime;
 
+    @Getter
+    @Setter
+    private int failures;
+
     @SneakyThrows
     @Override
     public void run() {
         if (sleepTime != null) {
             Thread.sleep(sleepTime.toMillis());
         }
+        if (getAttempts() <= failures) {
+            throw new IllegalStateException("Failure " + getAttempts());
+        }
     }
 }